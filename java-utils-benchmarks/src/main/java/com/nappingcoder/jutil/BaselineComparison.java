@@ -0,0 +1,131 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two JMH CSV result files, matching rows by benchmark, mode and
+ * parameters, and prints how much each score changed.
+ * <br/>
+ * Usage: <code>BaselineComparison baseline.csv result.csv</code>
+ * 
+ * @author alvinlin
+ *
+ */
+public final class BaselineComparison {
+	
+	private BaselineComparison() {
+	}
+	
+	public static void main(String[] args) throws IOException {
+		
+		if (args.length != 2) {
+			System.err.println("usage: BaselineComparison <baseline.csv> <result.csv>");
+			System.exit(1);
+		}
+		
+		Map<String, String[]> baseline = read(args[0]);
+		Map<String, String[]> result = read(args[1]);
+		
+		System.out.println();
+		System.out.println("Compared to " + args[0] + ":");
+		
+		for (Map.Entry<String, String[]> row : result.entrySet()) {
+			String[] now = row.getValue();
+			String[] before = baseline.get(row.getKey());
+			
+			if (before == null) {
+				System.out.printf("%-90s %14s %s (new)%n", row.getKey(), now[0], now[1]);
+				continue;
+			}
+			
+			double b = Double.parseDouble(before[0]);
+			double n = Double.parseDouble(now[0]);
+			String change = b == 0 ? "n/a" : String.format("%+.1f%%", (n - b) * 100 / b);
+			
+			System.out.printf("%-90s %14s -> %14s %-12s %s%n", row.getKey(), before[0], now[0], now[1], change);
+		}
+	}
+	
+	/**
+	 * Read the rows of the given file as "benchmark mode params" to
+	 * score and unit.
+	 */
+	private static Map<String, String[]> read(String file) throws IOException {
+		
+		Map<String, String[]> rows = new LinkedHashMap<String, String[]>();
+		
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			List<String> header = split(reader.readLine());
+			int benchmark = header.indexOf("Benchmark");
+			int mode = header.indexOf("Mode");
+			int score = header.indexOf("Score");
+			int unit = header.indexOf("Unit");
+			
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				List<String> fields = split(line);
+				
+				StringBuilder key = new StringBuilder(fields.get(benchmark)).append(' ').append(fields.get(mode));
+				for (int i = 0; i < header.size(); i++) {
+					if (header.get(i).startsWith("Param: ") && !fields.get(i).isEmpty()) {
+						key.append(' ').append(header.get(i).substring(7)).append('=').append(fields.get(i));
+					}
+				}
+				
+				rows.put(key.toString(), new String[] {fields.get(score), fields.get(unit)});
+			}
+		} finally {
+			reader.close();
+		}
+		
+		return rows;
+	}
+	
+	private static List<String> split(String line) {
+		
+		List<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '"') {
+				quoted = !quoted;
+			} else if (c == ',' && !quoted) {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+		
+		return fields;
+	}
+}
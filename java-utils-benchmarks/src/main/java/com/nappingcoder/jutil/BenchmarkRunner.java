@@ -0,0 +1,74 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil;
+
+import java.io.File;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>
+ * Runs the benchmarks with the GC profiler, so allocation rates are reported
+ * next to the scores, writes the results to <code>target/jmh-result.csv</code>
+ * and compares them to <code>baseline/jmh-baseline.csv</code>.
+ * </p>
+ * <br/>
+ * <p>
+ * Takes the usual JMH command line options, for example
+ * <code>java -jar target/benchmarks.jar HttpUrlBuilder -f 1 -wi 1</code>.
+ * </p>
+ * 
+ * @author alvinlin
+ *
+ */
+public final class BenchmarkRunner {
+	
+	static final String RESULT = "target/jmh-result.csv";
+	static final String BASELINE = "baseline/jmh-baseline.csv";
+	
+	private BenchmarkRunner() {
+	}
+	
+	public static void main(String[] args) throws Exception {
+		
+		new File(RESULT).getParentFile().mkdirs();
+		
+		Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.resultFormat(ResultFormatType.CSV)
+				.result(RESULT)
+				.build();
+		
+		new Runner(options).run();
+		
+		File baseline = new File(BASELINE);
+		if (baseline.isFile()) {
+			BaselineComparison.main(new String[] {BASELINE, RESULT});
+		} else {
+			System.out.println("No " + BASELINE + " to compare with, copy " + RESULT + " there to make one.");
+		}
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.concurrent;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time from submitting a {@link ProactiveFutureTask} to a contended pool
+ * until its callback has run, compared to waiting on a plain future.
+ * 
+ * @author alvinlin
+ *
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class ProactiveFutureTaskBenchmark {
+	
+	private static final Callable<Integer> WORK = new Callable<Integer>() {
+		
+		@Override
+		public Integer call() {
+			
+			return 42;
+		}
+	};
+	
+	@State(Scope.Benchmark)
+	public static class Pool {
+		
+		ExecutorService executor;
+		
+		ExecutorService callbacks;
+		
+		HistogramTimingRecorder recorder = new HistogramTimingRecorder();
+		
+		@Setup(Level.Trial)
+		public void setUp() {
+			
+			executor = Executors.newFixedThreadPool(4);
+			callbacks = Executors.newFixedThreadPool(4);
+		}
+		
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			
+			executor.shutdownNow();
+			callbacks.shutdownNow();
+		}
+	}
+	
+	@Benchmark
+	public int callback(Pool pool) throws InterruptedException {
+		
+		final CountDownLatch called = new CountDownLatch(1);
+		ProactiveFutureTask<Integer> task = new ProactiveFutureTask<Integer>(WORK, new ProactiveFutureTask.Callback<Integer>() {
+			
+			@Override
+			public void executionFinished(ProactiveFutureTask<Integer> task) {
+				
+				called.countDown();
+			}
+		});
+		
+		pool.executor.execute(task);
+		called.await();
+		
+		return task.isDone() ? 1 : 0;
+	}
+	
+	/**
+	 * Same as {@link #callback(Pool)} with timing recorded into a histogram.
+	 */
+	@Benchmark
+	public int callbackTimed(Pool pool) throws InterruptedException {
+		
+		final CountDownLatch called = new CountDownLatch(1);
+		ProactiveFutureTask<Integer> task = new ProactiveFutureTask<Integer>(WORK, new ProactiveFutureTask.Callback<Integer>() {
+			
+			@Override
+			public void executionFinished(ProactiveFutureTask<Integer> task) {
+				
+				called.countDown();
+			}
+		});
+		task.recordTimings(pool.recorder, "work");
+		
+		pool.executor.execute(task);
+		called.await();
+		
+		return task.isDone() ? 1 : 0;
+	}
+	
+	/**
+	 * Same as {@link #callback(Pool)} with a call back that blocks for 50us,
+	 * run on the worker.
+	 */
+	@Benchmark
+	public int slowCallback(Pool pool) throws InterruptedException {
+		
+		return runSlowCallback(pool, null);
+	}
+	
+	/**
+	 * Same as {@link #slowCallback(Pool)} with the call back handed off to
+	 * a call back executor, leaving the worker free for the next task.
+	 */
+	@Benchmark
+	public int slowCallbackOnExecutor(Pool pool) throws InterruptedException {
+		
+		return runSlowCallback(pool, pool.callbacks);
+	}
+	
+	@Benchmark
+	public Integer plainFuture(Pool pool) throws InterruptedException, ExecutionException {
+		
+		Future<Integer> future = pool.executor.submit(WORK);
+		
+		return future.get();
+	}
+	
+	private int runSlowCallback(Pool pool, Executor callbackExecutor) throws InterruptedException {
+		
+		final CountDownLatch called = new CountDownLatch(1);
+		ProactiveFutureTask<Integer> task = new ProactiveFutureTask<Integer>(WORK, new ProactiveFutureTask.Callback<Integer>() {
+			
+			@Override
+			public void executionFinished(ProactiveFutureTask<Integer> task) {
+				
+				LockSupport.parkNanos(50000);
+				called.countDown();
+			}
+		}, callbackExecutor);
+		
+		pool.executor.execute(task);
+		called.await();
+		
+		return task.isDone() ? 1 : 0;
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.http;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * URL build throughput of {@link HttpUrlBuilder} and {@link UrlTemplate}
+ * for short, long and Unicode heavy URLs.
+ * 
+ * @author alvinlin
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpUrlBuilderBenchmark {
+	
+	@Param({"short", "long", "unicode"})
+	public String input;
+	
+	private String[] _path;
+	private String[] _names;
+	private String[] _values;
+	private Object[] _templateValues;
+	private UrlTemplate _template;
+	private ByteBuffer _buffer;
+	
+	@Setup
+	public void setUp() throws HttpUrlBuilderException {
+		
+		if ("short".equals(input)) {
+			_path = new String[] {"v1", "users"};
+			_names = new String[] {"limit"};
+			_values = new String[] {"10"};
+		} else if ("long".equals(input)) {
+			_path = new String[10];
+			_names = new String[10];
+			_values = new String[10];
+			for (int i = 0; i < 10; i++) {
+				_path[i] = "path-element-number-" + i;
+				_names[i] = "query_parameter_" + i;
+				_values[i] = "a longer value with spaces & symbols/" + i;
+			}
+		} else {
+			_path = new String[] {"café", "你好世界", "😀😁", "straße"};
+			_names = new String[] {"q", "名前"};
+			_values = new String[] {"こんにちは 世界", "été 🌞"};
+		}
+		
+		StringBuilder template = new StringBuilder("https://api.example.com:8443");
+		_templateValues = new Object[_path.length + _values.length];
+		int v = 0;
+		for (int i = 0; i < _path.length; i++) {
+			template.append("/{p").append(i).append('}');
+			_templateValues[v++] = _path[i];
+		}
+		for (int i = 0; i < _names.length; i++) {
+			template.append(i == 0 ? '?' : '&').append("q").append(i).append("={v").append(i).append('}');
+			_templateValues[v++] = _values[i];
+		}
+		_template = UrlTemplate.compile(template.toString());
+		
+		_buffer = ByteBuffer.allocateDirect(4096);
+	}
+	
+	@Benchmark
+	public String newBuilder() throws HttpUrlBuilderException {
+		
+		return fill(HttpUrlBuilder.httpSecureBuilder()).toString();
+	}
+	
+	@Benchmark
+	public String reusableBuilder() throws HttpUrlBuilderException {
+		
+		return fill(HttpUrlBuilder.reusableHttpSecureBuilder()).toString();
+	}
+	
+	@Benchmark
+	public int reusableBuilderToByteBuffer() throws HttpUrlBuilderException {
+		
+		_buffer.clear();
+		return fill(HttpUrlBuilder.reusableHttpSecureBuilder()).writeTo(_buffer);
+	}
+	
+	@Benchmark
+	public String template() throws HttpUrlBuilderException {
+		
+		return _template.expand(_templateValues);
+	}
+	
+	private HttpUrlBuilder fill(HttpUrlBuilder builder) throws HttpUrlBuilderException {
+		
+		builder.host("api.example.com").port(8443);
+		for (String element : _path) {
+			builder.addPathElement(element);
+		}
+		for (int i = 0; i < _names.length; i++) {
+			builder.addQuery(_names[i], _values[i]);
+		}
+		
+		return builder;
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.properties;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Enumeration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Load (from a stream, a file and a snapshot), put, iterate, subset and store of {@link OrderedProperties} at 1k, 100k 
+ * and 1M keys.
+ * 
+ * @author alvinlin
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class OrderedPropertiesBenchmark {
+	
+	@Param({"1000", "100000", "1000000"})
+	public int size;
+	
+	private String[] _keys;
+	private String[] _values;
+	private byte[] _file;
+	private File _onDisk;
+	private File _snapshot;
+	private OrderedPropertiesSnapshot _opened;
+	private OrderedProperties _loaded;
+	
+	@Setup
+	public void setUp() throws IOException {
+		
+		_keys = new String[size];
+		_values = new String[size];
+		for (int i = 0; i < size; i++) {
+			_keys[i] = "tenant." + (i % 97) + ".feature.flag." + i;
+			_values[i] = "value number " + i;
+		}
+		
+		_loaded = new OrderedProperties();
+		for (int i = 0; i < size; i++) {
+			_loaded.setProperty(_keys[i], _values[i]);
+		}
+		
+		ByteArrayOutputStream file = new ByteArrayOutputStream(size * 48);
+		_loaded.store(file, null);
+		_file = file.toByteArray();
+		
+		_onDisk = File.createTempFile("benchmark", ".properties");
+		_onDisk.deleteOnExit();
+		Files.write(_onDisk.toPath(), _file);
+		
+		_snapshot = File.createTempFile("benchmark", ".snapshot");
+		_snapshot.deleteOnExit();
+		_loaded.storeSnapshot(_snapshot);
+		
+		// a mapping is only released by the garbage collector, opening one
+		// per call would run out of mappings before it runs
+		_opened = OrderedPropertiesSnapshot.open(_snapshot);
+	}
+	
+	@Benchmark
+	public OrderedProperties load() throws IOException {
+		
+		OrderedProperties props = new OrderedProperties();
+		props.load(new ByteArrayInputStream(_file));
+		
+		return props;
+	}
+	
+	@Benchmark
+	public OrderedProperties loadFile() throws IOException {
+		
+		OrderedProperties props = new OrderedProperties();
+		props.load(_onDisk);
+		
+		return props;
+	}
+	
+	@Benchmark
+	public String snapshotLookup() {
+		
+		return _opened.getProperty(_keys[_keys.length / 2]);
+	}
+	
+	@Benchmark
+	public OrderedProperties snapshotLoad() throws IOException {
+		
+		return OrderedPropertiesSnapshot.open(_snapshot).toProperties();
+	}
+	
+	@Benchmark
+	public OrderedProperties put() {
+		
+		OrderedProperties props = new OrderedProperties();
+		for (int i = 0; i < _keys.length; i++) {
+			props.put(_keys[i], _values[i]);
+		}
+		
+		return props;
+	}
+	
+	@Benchmark
+	public void iterate(Blackhole blackhole) {
+		
+		Enumeration<?> names = _loaded.propertyNames();
+		while (names.hasMoreElements()) {
+			blackhole.consume(_loaded.getProperty((String) names.nextElement()));
+		}
+	}
+	
+	@Benchmark
+	public OrderedProperties subset() {
+		
+		// one tenant out of 97
+		return _loaded.subset("tenant.42.");
+	}
+	
+	@Benchmark
+	public void store() throws IOException {
+		
+		_loaded.store(NullOutputStream.INSTANCE, null);
+	}
+	
+	private static final class NullOutputStream extends OutputStream {
+		
+		static final NullOutputStream INSTANCE = new NullOutputStream();
+		
+		@Override
+		public void write(int b) {
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.concurrent;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link TaskTimingRecorder} that keeps a {@link LatencyHistogram} of the
+ * queue, run and call back times of each type of task, which can be read
+ * at any time while tasks go on recording.
+ * <br/>
+ * Recording takes a map lookup and a few atomic increments. Only the
+ * first task of each type allocates.
+ *
+ */
+public class HistogramTimingRecorder implements TaskTimingRecorder {
+	
+	private final ConcurrentMap<String, Timings> _timings = new ConcurrentHashMap<String, Timings>();
+	
+	@Override
+	public void record(String type, long created, long started, long finished, long callbacksFinished) {
+		
+		Timings timings = timingsOf(type);
+		timings._queued.record(started - created);
+		timings._running.record(finished - started);
+		timings._callbacks.record(callbacksFinished - finished);
+	}
+	
+	/**
+	 * A task cancelled before it ran has no queue or run time, only its
+	 * call backs are recorded.
+	 */
+	@Override
+	public void recordCancelled(String type, long created, long cancelled, long callbacksFinished) {
+		
+		timingsOf(type)._callbacks.record(callbacksFinished - cancelled);
+	}
+	
+	/**
+	 * Get the types of tasks recorded so far.
+	 */
+	public Set<String> getTypes() {
+		
+		return Collections.unmodifiableSet(_timings.keySet());
+	}
+	
+	/**
+	 * Get the timings of the given type of task.
+	 *
+	 * @param type
+	 * @return null if no task of that type was recorded
+	 */
+	public Timings getTimings(String type) {
+		
+		return _timings.get(type);
+	}
+	
+	@Override
+	public String toString() {
+		
+		return _timings.toString();
+	}
+	
+	private Timings timingsOf(String type) {
+		
+		Timings timings = _timings.get(type);
+		if (timings == null) {
+			Timings fresh = new Timings();
+			timings = _timings.putIfAbsent(type, fresh);
+			if (timings == null) {
+				timings = fresh;
+			}
+		}
+		
+		return timings;
+	}
+	
+	/**
+	 * Timings of one type of task.
+	 */
+	public static final class Timings {
+		
+		private final LatencyHistogram _queued = new LatencyHistogram();
+		
+		private final LatencyHistogram _running = new LatencyHistogram();
+		
+		private final LatencyHistogram _callbacks = new LatencyHistogram();
+		
+		/**
+		 * Time from being made to starting to run.
+		 */
+		public LatencyHistogram getQueueTime() {
+			
+			return _queued;
+		}
+		
+		/**
+		 * Time spent running.
+		 */
+		public LatencyHistogram getRunTime() {
+			
+			return _running;
+		}
+		
+		/**
+		 * Time the call backs held the finishing thread.
+		 */
+		public LatencyHistogram getCallbackTime() {
+			
+			return _callbacks;
+		}
+		
+		@Override
+		public String toString() {
+			
+			return "queue " + _queued + "; run " + _running + "; call backs " + _callbacks;
+		}
+	}
+}
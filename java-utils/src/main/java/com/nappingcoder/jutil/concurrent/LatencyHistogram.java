@@ -0,0 +1,200 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * A histogram of durations in nanoseconds that many threads can record
+ * into without locking and without allocating.
+ * </p>
+ * <br/>
+ * <p>
+ * Buckets are log-linear: each power of two is split into 8 equal
+ * buckets, so a value is known to within 12.5% from 8ns up to the
+ * largest long, in under 500 buckets. Each thread records into one of
+ * several stripes, picked from its id, so threads rarely increment the
+ * same counter; reading sums the stripes. Percentiles are reported as the
+ * upper end of the bucket they fall in.
+ * </p>
+ * <br/>
+ * <p>
+ * Reading while others record gives a consistent enough picture, but not
+ * an atomic one.
+ * </p>
+ *
+ */
+public final class LatencyHistogram {
+	
+	private static final int SUB_BUCKET_BITS = 3;
+	
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	
+	/** one row of sub buckets for each power of two from 8 up, plus the linear ones below */
+	private static final int BUCKETS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+	
+	/** slot after the buckets holding the sum of the values */
+	private static final int SUM = BUCKETS;
+	
+	private final AtomicLongArray[] _stripes;
+	
+	private final int _mask;
+	
+	public LatencyHistogram() {
+		
+		int stripes = 1;
+		while (stripes < Runtime.getRuntime().availableProcessors() && stripes < 64) {
+			stripes <<= 1;
+		}
+		
+		_stripes = new AtomicLongArray[stripes];
+		for (int i = 0; i < stripes; i++) {
+			_stripes[i] = new AtomicLongArray(BUCKETS + 1);
+		}
+		_mask = stripes - 1;
+	}
+	
+	/**
+	 * Record the given duration. Negative durations count as 0.
+	 *
+	 * @param nanos
+	 */
+	public void record(long nanos) {
+		
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		
+		AtomicLongArray stripe = _stripes[(int) Thread.currentThread().getId() & _mask];
+		stripe.getAndIncrement(bucketOf(nanos));
+		stripe.getAndAdd(SUM, nanos);
+	}
+	
+	/**
+	 * Get the number of durations recorded.
+	 */
+	public long getCount() {
+		
+		long count = 0;
+		for (long c : counts()) {
+			count += c;
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Get the mean of the durations recorded, in nanoseconds, or 0 if none
+	 * were recorded.
+	 */
+	public double getMean() {
+		
+		long count = getCount();
+		if (count == 0) {
+			return 0;
+		}
+		
+		long sum = 0;
+		for (AtomicLongArray stripe : _stripes) {
+			sum += stripe.get(SUM);
+		}
+		
+		return (double) sum / count;
+	}
+	
+	/**
+	 * Get the duration that the given percentage of recorded durations do
+	 * not exceed, for example 99 for the 99th percentile.
+	 *
+	 * @param percentile between 0 and 100
+	 * @return the upper end of the bucket in nanoseconds, or 0 if nothing was recorded
+	 */
+	public long getPercentile(double percentile) {
+		
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException(percentile + " is not between 0 and 100");
+		}
+		
+		long[] counts = counts();
+		long total = 0;
+		for (long c : counts) {
+			total += c;
+		}
+		if (total == 0) {
+			return 0;
+		}
+		
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return highestValueIn(i);
+			}
+		}
+		
+		return highestValueIn(BUCKETS - 1);
+	}
+	
+	@Override
+	public String toString() {
+		
+		return "count " + getCount() + ", p50 " + getPercentile(50) + "ns, p99 " + getPercentile(99) + "ns, max "
+				+ getPercentile(100) + "ns";
+	}
+	
+	static int bucketOf(long value) {
+		
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+	
+	static long highestValueIn(int bucket) {
+		
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		int shift = exponent - SUB_BUCKET_BITS;
+		long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+		
+		return lowest + (1L << shift) - 1;
+	}
+	
+	private long[] counts() {
+		
+		long[] counts = new long[BUCKETS];
+		for (AtomicLongArray stripe : _stripes) {
+			for (int i = 0; i < BUCKETS; i++) {
+				counts[i] += stripe.get(i);
+			}
+		}
+		
+		return counts;
+	}
+}
@@ -0,0 +1,228 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link ThreadPoolExecutor} whose tasks are {@link ProactiveFutureTask}s.
+ * {@link #submit(Callable)} and the other submit methods return them, so
+ * call backs can be added to anything submitted. The futures returned by
+ * {@link #invokeAll(java.util.Collection)} and {@link #invokeAny(java.util.Collection)}
+ * are made the same way.
+ * <br/>
+ * Call backs run on the thread that finished the task unless a call back
+ * executor is set with {@link #setCallbackExecutor(Executor)}.
+ * <br/>
+ * {@link #newFixedThreadPool(int, int, RejectedExecutionHandler)} gives a
+ * pool with a bounded queue, and {@link #newVirtualThreadPerTaskExecutor()}
+ * runs each task on a new virtual thread, on Java 21 and later.
+ * <br/>
+ * With a recorder set by {@link #setTimingRecorder(TaskTimingRecorder)},
+ * tasks are timed, and their type is the class name of the submitted
+ * {@link Callable} or {@link Runnable}.
+ *
+ */
+public class ProactiveExecutorService extends ThreadPoolExecutor {
+	
+	private volatile Executor _callbackExecutor;
+	
+	private volatile TaskTimingRecorder _timingRecorder;
+	
+	public ProactiveExecutorService(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+			BlockingQueue<Runnable> workQueue) {
+		
+		super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue);
+	}
+	
+	public ProactiveExecutorService(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+			BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory, RejectedExecutionHandler handler) {
+		
+		super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, handler);
+	}
+	
+	/**
+	 * A pool of the given number of threads, with a queue holding at most
+	 * the given number of waiting tasks. Tasks that do not fit are given to
+	 * the handler, for example a {@link ThreadPoolExecutor.CallerRunsPolicy}
+	 * to slow down submitters.
+	 *
+	 * @param threads
+	 * @param queueCapacity
+	 * @param handler
+	 * @return
+	 */
+	public static ProactiveExecutorService newFixedThreadPool(int threads, int queueCapacity, RejectedExecutionHandler handler) {
+		
+		return new ProactiveExecutorService(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity), Executors.defaultThreadFactory(), handler);
+	}
+	
+	/**
+	 * An executor that starts a new virtual thread for each task, and keeps
+	 * none around once their task is done.
+	 *
+	 * @return
+	 * @throws UnsupportedOperationException before Java 21, which has no virtual threads
+	 */
+	public static ProactiveExecutorService newVirtualThreadPerTaskExecutor() {
+		
+		return new ProactiveExecutorService(0, Integer.MAX_VALUE, 0, TimeUnit.MILLISECONDS,
+				new SynchronousQueue<Runnable>(), virtualThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+	}
+	
+	public Executor getCallbackExecutor() {
+		
+		return _callbackExecutor;
+	}
+	
+	/**
+	 * Set the executor to run call backs of tasks submitted from now on,
+	 * or null to run them on the thread that finished the task.
+	 *
+	 * @param callbackExecutor
+	 */
+	public void setCallbackExecutor(Executor callbackExecutor) {
+		
+		_callbackExecutor = callbackExecutor;
+	}
+	
+	public TaskTimingRecorder getTimingRecorder() {
+		
+		return _timingRecorder;
+	}
+	
+	/**
+	 * Set the recorder to time tasks submitted from now on, or null to stop
+	 * timing them.
+	 *
+	 * @param timingRecorder
+	 * @see HistogramTimingRecorder
+	 */
+	public void setTimingRecorder(TaskTimingRecorder timingRecorder) {
+		
+		_timingRecorder = timingRecorder;
+	}
+	
+	@Override
+	public <T> ProactiveFutureTask<T> submit(Callable<T> task) {
+		
+		return (ProactiveFutureTask<T>) super.submit(task);
+	}
+	
+	@Override
+	public <T> ProactiveFutureTask<T> submit(Runnable task, T result) {
+		
+		return (ProactiveFutureTask<T>) super.submit(task, result);
+	}
+	
+	@Override
+	public ProactiveFutureTask<?> submit(Runnable task) {
+		
+		return (ProactiveFutureTask<?>) super.submit(task);
+	}
+	
+	/**
+	 * Submit the given task with a call back.
+	 *
+	 * @param task
+	 * @param callback
+	 * @return
+	 */
+	public <T> ProactiveFutureTask<T> submit(Callable<T> task, ProactiveFutureTask.Callback<T> callback) {
+		
+		if (task == null) {
+			throw new NullPointerException();
+		}
+		
+		ProactiveFutureTask<T> future = timed(new ProactiveFutureTask<T>(task, callback, _callbackExecutor), task);
+		execute(future);
+		
+		return future;
+	}
+	
+	/**
+	 * Submit the given task with a call back.
+	 *
+	 * @param task
+	 * @param result
+	 * @param callback
+	 * @return
+	 */
+	public <T> ProactiveFutureTask<T> submit(Runnable task, T result, ProactiveFutureTask.Callback<T> callback) {
+		
+		if (task == null) {
+			throw new NullPointerException();
+		}
+		
+		ProactiveFutureTask<T> future = timed(new ProactiveFutureTask<T>(task, result, callback, _callbackExecutor), task);
+		execute(future);
+		
+		return future;
+	}
+	
+	@Override
+	protected <T> ProactiveFutureTask<T> newTaskFor(Callable<T> callable) {
+		
+		return timed(new ProactiveFutureTask<T>(callable, null, _callbackExecutor), callable);
+	}
+	
+	@Override
+	protected <T> ProactiveFutureTask<T> newTaskFor(Runnable runnable, T value) {
+		
+		return timed(new ProactiveFutureTask<T>(runnable, value, null, _callbackExecutor), runnable);
+	}
+	
+	private <T> ProactiveFutureTask<T> timed(ProactiveFutureTask<T> future, Object task) {
+		
+		TaskTimingRecorder recorder = _timingRecorder;
+		if (recorder != null) {
+			future.recordTimings(recorder, task.getClass().getName());
+		}
+		
+		return future;
+	}
+	
+	/**
+	 * Get the virtual thread factory through reflection, the code is built
+	 * for versions without virtual threads.
+	 */
+	private static ThreadFactory virtualThreadFactory() {
+		
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+			
+			return (ThreadFactory) factory.invoke(builder);
+		} catch (ReflectiveOperationException e) {
+			throw new UnsupportedOperationException("virtual threads need Java 21 or later", e);
+		}
+	}
+}
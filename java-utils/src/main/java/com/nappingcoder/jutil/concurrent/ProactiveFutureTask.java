@@ -20,11 +20,36 @@
 package com.nappingcoder.jutil.concurrent;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * Extension of {@link FutureTask} that will call the given 
  * call back upon end of execution (either normally or abnormally).
+ * <br/>
+ * By default the call back runs on the thread that finished the task,
+ * usually a pool worker. Give a call back {@link Executor} to keep slow
+ * call backs off the workers; call backs marked {@link InlineCallback}
+ * still run on the finishing thread, without the hand-off. If the call
+ * back executor rejects the call back, it runs on the finishing thread
+ * instead, so it is never lost.
+ * <br/>
+ * More call backs can be added at any time with {@link #addCallback(Callback)},
+ * without locking. They are called after the one given to the constructor,
+ * in the order they were added.
+ * <br/>
+ * {@link #toCompletableFuture()} gives a {@link CompletableFuture} of the
+ * result, to chain further work without blocking a thread on {@link #get()}.
+ * <br/>
+ * {@link #recordTimings(TaskTimingRecorder, String)} turns on timestamps
+ * for when the task was made, started and finished and when its call backs
+ * were done. They are plain {@link System#nanoTime()} values kept in fields,
+ * handed to the recorder at the end; with timing off, the only cost is a
+ * null check.
  * 
  * @author chlin
  *
@@ -32,8 +57,41 @@ import java.util.concurrent.FutureTask;
  */
 public class ProactiveFutureTask<V> extends FutureTask<V> {
 
+	/** head of {@link #_added} once the call backs have been called */
+	private static final Node<?> DONE = new Node<Object>(null, null);
+	
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<ProactiveFutureTask, Node> ADDED =
+			AtomicReferenceFieldUpdater.newUpdater(ProactiveFutureTask.class, Node.class, "_added");
+	
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<ProactiveFutureTask, CompletableFuture> COMPLETION =
+			AtomicReferenceFieldUpdater.newUpdater(ProactiveFutureTask.class, CompletableFuture.class, "_completion");
+	
 	private Callback<V> _callback;
 	
+	private Executor _callbackExecutor;
+	
+	/** call backs added later, most recent first, or {@link #DONE} */
+	private volatile Node<V> _added;
+	
+	private volatile CompletableFuture<V> _completion;
+	
+	/** null unless timing is on */
+	private TaskTimingRecorder _recorder;
+	
+	private String _type;
+	
+	private long _created;
+	
+	private long _started;
+	
+	/**
+	 * set after _started by the thread that runs the task, read by the one
+	 * that finishes it, which may have cancelled it instead
+	 */
+	private volatile boolean _ran;
+	
 	public ProactiveFutureTask(Runnable runnable, V result) {
 		super (runnable, result);
 	}
@@ -54,18 +112,252 @@ public class ProactiveFutureTask<V> extends FutureTask<V> {
 		_callback = callback;
 	}
 	
+	/**
+	 * @param r
+	 * @param result
+	 * @param callback
+	 * @param callbackExecutor runs the call back, unless it is an {@link InlineCallback}
+	 */
+	public ProactiveFutureTask(Runnable r, V result, Callback<V> callback, Executor callbackExecutor) {
+		
+		this(r, result, callback);
+		_callbackExecutor = callbackExecutor;
+	}
+	
+	/**
+	 * @param c
+	 * @param callback
+	 * @param callbackExecutor runs the call back, unless it is an {@link InlineCallback}
+	 */
+	public ProactiveFutureTask(Callable<V> c, Callback<V> callback, Executor callbackExecutor) {
+		
+		this(c, callback);
+		_callbackExecutor = callbackExecutor;
+	}
+	
+	/**
+	 * Add a call back, to be called like the one given to the constructor.
+	 * If the task is already done, the call back is called right away on
+	 * the calling thread.
+	 *
+	 * @param callback
+	 */
+	@SuppressWarnings("unchecked")
+	public void addCallback(Callback<V> callback) {
+		
+		if (callback == null) {
+			throw new NullPointerException();
+		}
+		
+		Node<V> head;
+		do {
+			head = _added;
+			if (head == DONE) {
+				callback.executionFinished(this);
+				return;
+			}
+		} while (!ADDED.compareAndSet(this, head, new Node<V>(callback, head)));
+	}
+	
+	/**
+	 * Time this task and give the timestamps to the given recorder once the
+	 * call backs are done. Call right after making the task, before it is
+	 * submitted; the time of this call counts as the time it was made.
+	 *
+	 * @param recorder
+	 * @param type what kind of task this is, passed on to the recorder
+	 */
+	public void recordTimings(TaskTimingRecorder recorder, String type) {
+		
+		_type = type;
+		_created = System.nanoTime();
+		_recorder = recorder;
+	}
+	
+	@Override
+	public void run() {
+		
+		if (_recorder != null) {
+			_started = System.nanoTime();
+			_ran = true;
+		}
+		
+		super.run();
+	}
+	
+	/**
+	 * Get a {@link CompletableFuture} that completes with the result of this
+	 * task, from the thread that finishes it, so stages chained without
+	 * <code>Async</code> run on that thread. If the task fails, it completes
+	 * exceptionally with the cause.
+	 * <br/>
+	 * Cancelling either one cancels the other. Completing the returned
+	 * future by other means does not affect this task.
+	 *
+	 * @return the same future on every call
+	 */
+	public CompletableFuture<V> toCompletableFuture() {
+		
+		CompletableFuture<V> completion = _completion;
+		if (completion != null) {
+			return completion;
+		}
+		
+		completion = new CompletableFuture<V>() {
+			
+			@Override
+			public boolean cancel(boolean mayInterruptIfRunning) {
+				
+				boolean cancelled = super.cancel(mayInterruptIfRunning);
+				ProactiveFutureTask.this.cancel(mayInterruptIfRunning);
+				
+				return cancelled;
+			}
+		};
+		if (!COMPLETION.compareAndSet(this, null, completion)) {
+			return _completion;
+		}
+		
+		final CompletableFuture<V> target = completion;
+		addCallback(new InlineCallback<V>() {
+			
+			@Override
+			public void executionFinished(ProactiveFutureTask<V> task) {
+				
+				complete(target);
+			}
+		});
+		
+		return completion;
+	}
+	
 	@Override
+	@SuppressWarnings("unchecked")
 	protected void done() {
 		
 		super.done();
 		
+		long finished = _recorder != null ? System.nanoTime() : 0;
+		
+		// once DONE is in, added call backs are called by addCallback()
+		Node<V> added = ADDED.getAndSet(this, DONE);
+		if (_callback == null && added == null) {
+			if (_recorder != null) {
+				recordTimings(finished, finished);
+			}
+			return;
+		}
+		
+		RuntimeException failure = null;
 		if (_callback != null) {
-			_callback.executionFinished(this);
+			failure = dispatch(_callback, failure);
+		}
+		
+		// the stack is most recent first, call them in the order they came
+		Node<V> ordered = null;
+		for (Node<V> node = added; node != null; node = node._next) {
+			ordered = new Node<V>(node._callback, ordered);
+		}
+		for (Node<V> node = ordered; node != null; node = node._next) {
+			failure = dispatch(node._callback, failure);
+		}
+		
+		if (_recorder != null) {
+			recordTimings(finished, System.nanoTime());
+		}
+		
+		if (failure != null) {
+			throw failure;
+		}
+	}
+	
+	private void recordTimings(long finished, long callbacksFinished) {
+		
+		if (_ran) {
+			_recorder.record(_type, _created, _started, finished, callbacksFinished);
+		} else {
+			_recorder.recordCancelled(_type, _created, finished, callbacksFinished);
+		}
+	}
+	
+	/**
+	 * Pass the outcome of this task, which is done, to the given future.
+	 */
+	private void complete(CompletableFuture<V> target) {
+		
+		if (isCancelled()) {
+			target.cancel(false);
+			return;
+		}
+		
+		try {
+			target.complete(get());
+		} catch (ExecutionException e) {
+			target.completeExceptionally(e.getCause());
+		} catch (InterruptedException e) {
+			// cannot happen, get() does not wait once done
+			Thread.currentThread().interrupt();
+			target.completeExceptionally(e);
+		}
+	}
+	
+	/**
+	 * Call the given call back, or hand it to the call back executor. A call
+	 * back that throws does not keep the others from being called.
+	 *
+	 * @return the first failure so far
+	 */
+	private RuntimeException dispatch(final Callback<V> callback, RuntimeException failure) {
+		
+		try {
+			if (_callbackExecutor == null || callback instanceof InlineCallback) {
+				callback.executionFinished(this);
+			} else {
+				try {
+					_callbackExecutor.execute(new Runnable() {
+						
+						@Override
+						public void run() {
+							
+							callback.executionFinished(ProactiveFutureTask.this);
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					callback.executionFinished(this);
+				}
+			}
+		} catch (RuntimeException e) {
+			if (failure == null) {
+				return e;
+			}
+			failure.addSuppressed(e);
 		}
+		
+		return failure;
 	}
 
 	public interface Callback<V> {
 		
 		public void executionFinished(ProactiveFutureTask<V> task);
 	}
+	
+	/**
+	 * Marks a call back as cheap enough to run on the thread that finished
+	 * the task, even when a call back executor is given.
+	 */
+	public interface InlineCallback<V> extends Callback<V> {
+	}
+	
+	private static final class Node<V> {
+		
+		final Callback<V> _callback;
+		
+		final Node<V> _next;
+		
+		Node(Callback<V> callback, Node<V> next) {
+			
+			_callback = callback;
+			_next = next;
+		}
+	}
 }
@@ -0,0 +1,55 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.concurrent;
+
+/**
+ * Receives the timestamps of a {@link ProactiveFutureTask} once its call
+ * backs are done. All timestamps come from {@link System#nanoTime()}, so
+ * only the differences between them mean anything.
+ * <br/>
+ * Called on the thread that finished the task, on every task, so
+ * implementations should be quick and must not block.
+ *
+ * @see ProactiveFutureTask#recordTimings(TaskTimingRecorder, String)
+ * @see HistogramTimingRecorder
+ */
+public interface TaskTimingRecorder {
+	
+	/**
+	 * Record a task that ran.
+	 *
+	 * @param type what kind of task it was, as given when timing was turned on
+	 * @param created when timing was turned on, normally right after the task was made
+	 * @param started when the task started running
+	 * @param finished when the task finished, normally or not
+	 * @param callbacksFinished when the call backs were done, or handed off to the call back executor
+	 */
+	public void record(String type, long created, long started, long finished, long callbacksFinished);
+	
+	/**
+	 * Record a task that was cancelled before it ran, so it has no start.
+	 *
+	 * @param type what kind of task it was, as given when timing was turned on
+	 * @param created when timing was turned on, normally right after the task was made
+	 * @param cancelled when the task was cancelled
+	 * @param callbacksFinished when the call backs were done, or handed off to the call back executor
+	 */
+	public void recordCancelled(String type, long created, long cancelled, long callbacksFinished);
+}
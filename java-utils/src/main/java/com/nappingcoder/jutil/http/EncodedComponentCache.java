@@ -0,0 +1,235 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.http;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * A size bounded, least recently used cache from raw URL components (path
+ * elements, query names and values) to their encoded form. Give one to
+ * any number of builders with {@link HttpUrlBuilder#encodingCache(EncodedComponentCache)}
+ * so components that keep coming back are encoded once per process instead
+ * of once per URL.
+ * </p>
+ * <br/>
+ * <p>
+ * Only components with non-ASCII characters go through the cache. Encoding
+ * plain ASCII is a table lookup per character, which is cheaper than a
+ * hash lookup, so those are always encoded directly. Components longer than
+ * {@value #MAX_CACHED_LENGTH} characters are not cached either.
+ * </p>
+ * <br/>
+ * <p>
+ * The cache is split in segments, each with its own lock and its own share
+ * of the maximum size, so concurrent builders rarely wait for each other.
+ * Eviction is least recently used within a segment.
+ * </p>
+ *
+ * @author alvinlin
+ *
+ */
+public final class EncodedComponentCache {
+	
+	public static final int MAX_CACHED_LENGTH = 256;
+	
+	private static final int DEFAULT_SEGMENTS = 16;
+	
+	private final Segment[] _segments;
+	
+	/**
+	 * Create a cache holding at most about the given number of components.
+	 *
+	 * @param maxSize
+	 */
+	public EncodedComponentCache(int maxSize) {
+		
+		this(maxSize, DEFAULT_SEGMENTS);
+	}
+	
+	/**
+	 * Create a cache holding at most about the given number of components,
+	 * split in the given number of independently locked segments.
+	 *
+	 * @param maxSize
+	 * @param segments
+	 */
+	public EncodedComponentCache(int maxSize, int segments) {
+		
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException(maxSize + " is not a valid cache size");
+		}
+		if (segments <= 0) {
+			throw new IllegalArgumentException(segments + " is not a valid number of segments");
+		}
+		
+		// a power of two, so a segment is picked with a mask
+		int count = Integer.highestOneBit(Math.min(segments, maxSize));
+		if (count < Math.min(segments, maxSize)) {
+			count <<= 1;
+		}
+		
+		_segments = new Segment[count];
+		for (int i = 0; i < count; i++) {
+			_segments[i] = new Segment((maxSize + count - 1) / count);
+		}
+	}
+	
+	/**
+	 * Percent-encode the given component and append it to the given buffer,
+	 * taking the encoded form from the cache when it is there.
+	 *
+	 * @param component
+	 * @param out
+	 */
+	public void encode(String component, StringBuilder out) {
+		
+		if (component.length() > MAX_CACHED_LENGTH || isAscii(component)) {
+			PercentCodec.encode(component, out);
+			return;
+		}
+		
+		out.append(segmentFor(component).encoded(component));
+	}
+	
+	/**
+	 * Get the number of lookups that found the component in the cache.
+	 *
+	 * @return
+	 */
+	public long getHitCount() {
+		
+		long hits = 0;
+		for (Segment segment : _segments) {
+			synchronized (segment) {
+				hits += segment.hits;
+			}
+		}
+		
+		return hits;
+	}
+	
+	/**
+	 * Get the number of lookups that had to encode the component.
+	 *
+	 * @return
+	 */
+	public long getMissCount() {
+		
+		long misses = 0;
+		for (Segment segment : _segments) {
+			synchronized (segment) {
+				misses += segment.misses;
+			}
+		}
+		
+		return misses;
+	}
+	
+	/**
+	 * Get the number of components in the cache.
+	 *
+	 * @return
+	 */
+	public int size() {
+		
+		int size = 0;
+		for (Segment segment : _segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		
+		return size;
+	}
+	
+	/**
+	 * Remove all components from the cache. The counters are kept.
+	 */
+	public void clear() {
+		
+		for (Segment segment : _segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+	
+	private Segment segmentFor(String component) {
+		
+		int h = component.hashCode();
+		h ^= (h >>> 16);
+		
+		return _segments[h & (_segments.length - 1)];
+	}
+	
+	private static boolean isAscii(String s) {
+		
+		for (int i = 0; i < s.length(); i++) {
+			if (s.charAt(i) >= 128) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	private static final class Segment extends LinkedHashMap<String, String> {
+		
+		private static final long serialVersionUID = -4236420863389316187L;
+		
+		private final int _maxSize;
+		
+		long hits;
+		long misses;
+		
+		Segment(int maxSize) {
+			
+			super(16, 0.75f, true);
+			_maxSize = maxSize;
+		}
+		
+		synchronized String encoded(String component) {
+			
+			String encoded = super.get(component);
+			
+			if (encoded != null) {
+				hits++;
+				return encoded;
+			}
+			
+			misses++;
+			
+			StringBuilder buffer = new StringBuilder(component.length() * 9);
+			PercentCodec.encode(component, buffer);
+			encoded = buffer.toString();
+			put(component, encoded);
+			
+			return encoded;
+		}
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+			
+			return size() > _maxSize;
+		}
+	}
+}
@@ -0,0 +1,620 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.http;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <p>
+ * A parsed HTTP URL. Parsing does not copy or decode anything; it only
+ * records where the host, port, path elements and query pairs are in the
+ * given character sequence. Components are decoded when they are asked for,
+ * and components that are copied to an {@link HttpUrlBuilder} (see
+ * {@link #toBuilder()}) are copied as they are, without being decoded and
+ * encoded again.
+ * </p>
+ * <br/>
+ * <p>
+ * Like {@link HttpUrlBuilder}, this class is stingy: empty path elements and
+ * empty query pairs are skipped. Fragments are not kept, and URLs with user
+ * info are not supported. Path elements and query pairs are decoded the same
+ * way {@link HttpUrlBuilder} encodes them, <code>+</code> being a space.
+ * </p>
+ * <br/>
+ * <p>
+ * Instances are immutable as long as the parsed character sequence is not
+ * changed, which is always the case for a {@link String}, and can be used
+ * as map keys: the hash code is computed once when parsed, and
+ * {@link #equals(Object)} compares components in place. Use
+ * {@link #canonical()} to make equivalent URLs equal.
+ * </p>
+ *
+ * @author alvinlin
+ *
+ */
+public final class HttpUrl {
+	
+	private static final int[] NONE = new int[0];
+	
+	private final CharSequence _source;
+	private final int _end;
+	private final boolean _secure;
+	private final int _hostStart;
+	private final int _hostEnd;
+	private final int _port;
+	
+	/** start and end of each path element */
+	private final int[] _path;
+	
+	/** start and end of name and value of each query pair */
+	private final int[] _query;
+	
+	private final int _hash;
+	
+	private HttpUrl(CharSequence source, int end, boolean secure, int hostStart, int hostEnd, int port, int[] path, int[] query) {
+		
+		_source = source;
+		_end = end;
+		_secure = secure;
+		_hostStart = hostStart;
+		_hostEnd = hostEnd;
+		_port = port;
+		_path = path;
+		_query = query;
+		_hash = computeHash();
+	}
+	
+	/**
+	 * Parse the given HTTP URL. The given character sequence is referenced,
+	 * not copied.
+	 *
+	 * @param url
+	 * @return
+	 * @throws HttpUrlBuilderException if the given string is not an HTTP URL
+	 */
+	public static HttpUrl parse(CharSequence url)
+	throws HttpUrlBuilderException {
+		
+		if (url == null) {
+			throw new HttpUrlBuilderException("given url is null");
+		}
+		
+		boolean secure;
+		int i;
+		if (startsWithIgnoreCase(url, "http://")) {
+			secure = false;
+			i = 7;
+		} else if (startsWithIgnoreCase(url, "https://")) {
+			secure = true;
+			i = 8;
+		} else {
+			throw new HttpUrlBuilderException(url + " does not start with http:// or https://");
+		}
+		
+		int end = url.length();
+		int hostStart = i;
+		int authorityEnd = end;
+		for (int j = i; j < end; j++) {
+			char c = url.charAt(j);
+			if (c == '/' || c == '?' || c == '#') {
+				authorityEnd = j;
+				break;
+			}
+			if (c == '@') {
+				throw new HttpUrlBuilderException("user info is not supported: " + url);
+			}
+		}
+		
+		int hostEnd = authorityEnd;
+		int port = 0;
+		for (int j = authorityEnd - 1; j >= hostStart; j--) {
+			char c = url.charAt(j);
+			if (c == ':') {
+				hostEnd = j;
+				port = parsePort(url, j + 1, authorityEnd);
+				break;
+			}
+			if (c < '0' || c > '9') {
+				break;
+			}
+		}
+		
+		if (hostEnd == hostStart) {
+			throw new HttpUrlBuilderException("host must be given: " + url);
+		}
+		
+		i = authorityEnd;
+		int pathEnd = end;
+		for (int j = i; j < end; j++) {
+			char c = url.charAt(j);
+			if (c == '?' || c == '#') {
+				pathEnd = j;
+				break;
+			}
+		}
+		
+		int queryEnd = pathEnd;
+		if (pathEnd < end && url.charAt(pathEnd) == '?') {
+			queryEnd = end;
+			for (int j = pathEnd + 1; j < end; j++) {
+				if (url.charAt(j) == '#') {
+					queryEnd = j;
+					break;
+				}
+			}
+		}
+		
+		int malformed = PercentCodec.firstMalformed(url, i, queryEnd);
+		if (malformed >= 0) {
+			throw new HttpUrlBuilderException("malformed escape at index " + malformed + ": " + url);
+		}
+		
+		return new HttpUrl(url, queryEnd, secure, hostStart, hostEnd, port,
+				splitPath(url, i, pathEnd), splitQuery(url, pathEnd + 1, queryEnd));
+	}
+	
+	public boolean isSecure() {
+		
+		return _secure;
+	}
+	
+	/**
+	 * Get the protocol, which is either <code>http</code> or <code>https</code>.
+	 *
+	 * @return
+	 */
+	public String getProtocol() {
+		
+		return _secure ? "https" : "http";
+	}
+	
+	public String getHost() {
+		
+		return _source.subSequence(_hostStart, _hostEnd).toString();
+	}
+	
+	/**
+	 * Get the port.
+	 *
+	 * @return the port, or 0 if the URL does not have one
+	 */
+	public int getPort() {
+		
+		return _port;
+	}
+	
+	public int getPathElementCount() {
+		
+		return _path.length / 2;
+	}
+	
+	/**
+	 * Get the decoded path element at the given index.
+	 *
+	 * @param index
+	 * @return
+	 */
+	public String getPathElement(int index) {
+		
+		checkIndex(index, getPathElementCount());
+		return PercentCodec.decode(_source, _path[2 * index], _path[2 * index + 1]);
+	}
+	
+	/**
+	 * Get all path elements, decoded.
+	 *
+	 * @return
+	 */
+	public List<String> getPathElements() {
+		
+		int count = getPathElementCount();
+		List<String> elements = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) {
+			elements.add(getPathElement(i));
+		}
+		
+		return Collections.unmodifiableList(elements);
+	}
+	
+	public int getQueryCount() {
+		
+		return _query.length / 4;
+	}
+	
+	/**
+	 * Get the decoded name of the query pair at the given index.
+	 *
+	 * @param index
+	 * @return
+	 */
+	public String getQueryName(int index) {
+		
+		checkIndex(index, getQueryCount());
+		return PercentCodec.decode(_source, _query[4 * index], _query[4 * index + 1]);
+	}
+	
+	/**
+	 * Get the decoded value of the query pair at the given index.
+	 *
+	 * @param index
+	 * @return the value, which is empty if the pair has none
+	 */
+	public String getQueryValue(int index) {
+		
+		checkIndex(index, getQueryCount());
+		return PercentCodec.decode(_source, _query[4 * index + 2], _query[4 * index + 3]);
+	}
+	
+	/**
+	 * Get the decoded value of the first query pair with the given name.
+	 * Only that value is decoded.
+	 *
+	 * @param name
+	 * @return the value, or null if there is no such pair
+	 */
+	public String getQueryValue(String name) {
+		
+		int index = indexOfQuery(name, 0);
+		return index < 0 ? null : getQueryValue(index);
+	}
+	
+	/**
+	 * Get the decoded values of all query pairs with the given name.
+	 *
+	 * @param name
+	 * @return
+	 */
+	public List<String> getQueryValues(String name) {
+		
+		List<String> values = new ArrayList<String>(2);
+		for (int i = indexOfQuery(name, 0); i >= 0; i = indexOfQuery(name, i + 1)) {
+			values.add(getQueryValue(i));
+		}
+		
+		return Collections.unmodifiableList(values);
+	}
+	
+	/**
+	 * Find the index of the first query pair with the given name, starting
+	 * from the given index.
+	 *
+	 * @param name
+	 * @param from
+	 * @return the index, or -1 if there is no such pair
+	 */
+	public int indexOfQuery(String name, int from) {
+		
+		int count = getQueryCount();
+		for (int i = Math.max(from, 0); i < count; i++) {
+			if (PercentCodec.decodesTo(_source, _query[4 * i], _query[4 * i + 1], name)) {
+				return i;
+			}
+		}
+		
+		return -1;
+	}
+	
+	/**
+	 * Create a builder holding the components of this URL. Path elements
+	 * and query pairs are copied as they are, without being re-encoded.
+	 *
+	 * @return
+	 */
+	public HttpUrlBuilder toBuilder() {
+		
+		return HttpUrlBuilder.from(this);
+	}
+	
+	/**
+	 * <p>
+	 * Get the canonical form of this URL, in which equivalent URLs are equal:
+	 * the host is in lower case, the default port of the protocol is dropped,
+	 * path elements and query pairs are encoded the way {@link HttpUrlBuilder}
+	 * encodes them, and query pairs are sorted by name, then by value.
+	 * </p>
+	 * <p>
+	 * Pairs with the same name keep their relative order if their values are
+	 * equal too, so the canonical form is stable.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public HttpUrl canonical() {
+		
+		HttpUrlBuilder builder = _secure ? HttpUrlBuilder.httpSecureBuilder() : HttpUrlBuilder.httpBuilder();
+		
+		try {
+			builder.host(getHost().toLowerCase(Locale.ENGLISH));
+			if (effectivePort() > 0) {
+				builder.port(_port);
+			}
+			
+			for (int i = 0; i < getPathElementCount(); i++) {
+				builder.addPathElement(getPathElement(i));
+			}
+			
+			int count = getQueryCount();
+			final String[] pairs = new String[2 * count];
+			Integer[] order = new Integer[count];
+			for (int i = 0; i < count; i++) {
+				pairs[2 * i] = getQueryName(i);
+				pairs[2 * i + 1] = getQueryValue(i);
+				order[i] = i;
+			}
+			
+			Arrays.sort(order, new Comparator<Integer>() {
+				
+				public int compare(Integer a, Integer b) {
+					
+					int c = pairs[2 * a].compareTo(pairs[2 * b]);
+					return c != 0 ? c : pairs[2 * a + 1].compareTo(pairs[2 * b + 1]);
+				}
+			});
+			
+			for (int i : order) {
+				builder.addQuery(pairs[2 * i], pairs[2 * i + 1]);
+			}
+		} catch (HttpUrlBuilderException e) {
+			throw new IllegalStateException("cannot rebuild " + this, e);
+		}
+		
+		return builder.build();
+	}
+	
+	@Override
+	public int hashCode() {
+		
+		return _hash;
+	}
+	
+	/**
+	 * Two URLs are equal if they have the same protocol, host (ignoring case)
+	 * and port (the default port of the protocol being the same as no port),
+	 * and the same path elements and query pairs, in the same order and 
+	 * encoded the same way. Components are compared where they are, the URLs
+	 * are not turned into strings.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		
+		if (this == obj) {
+			return true;
+		}
+		
+		if (!(obj instanceof HttpUrl)) {
+			return false;
+		}
+		
+		HttpUrl other = (HttpUrl) obj;
+		
+		if (_hash != other._hash
+				|| _secure != other._secure
+				|| effectivePort() != other.effectivePort()
+				|| _path.length != other._path.length
+				|| _query.length != other._query.length) {
+			return false;
+		}
+		
+		if (!regionEquals(_source, _hostStart, _hostEnd, other._source, other._hostStart, other._hostEnd, true)) {
+			return false;
+		}
+		
+		for (int i = 0; i < _path.length; i += 2) {
+			if (!regionEquals(_source, _path[i], _path[i + 1], other._source, other._path[i], other._path[i + 1], false)) {
+				return false;
+			}
+		}
+		
+		for (int i = 0; i < _query.length; i += 2) {
+			if (!regionEquals(_source, _query[i], _query[i + 1], other._source, other._query[i], other._query[i + 1], false)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Get the parsed URL, without its fragment if it had one.
+	 */
+	@Override
+	public String toString() {
+		
+		return _source.subSequence(0, _end).toString();
+	}
+	
+	void appendEncodedPathElement(int index, StringBuilder out) {
+		
+		checkIndex(index, getPathElementCount());
+		out.append(_source, _path[2 * index], _path[2 * index + 1]);
+	}
+	
+	void appendEncodedQuery(int index, StringBuilder out) {
+		
+		checkIndex(index, getQueryCount());
+		out.append(_source, _query[4 * index], _query[4 * index + 1])
+		.append('=')
+		.append(_source, _query[4 * index + 2], _query[4 * index + 3]);
+	}
+	
+	private int effectivePort() {
+		
+		return _port == (_secure ? 443 : 80) ? 0 : _port;
+	}
+	
+	private int computeHash() {
+		
+		int h = _secure ? 1 : 0;
+		h = 31 * h + effectivePort();
+		
+		for (int i = _hostStart; i < _hostEnd; i++) {
+			h = 31 * h + Character.toLowerCase(_source.charAt(i));
+		}
+		
+		// the separators keep ["ab"] and ["a", "b"] apart
+		for (int i = 0; i < _path.length; i += 2) {
+			h = hash(_source, _path[i], _path[i + 1], 31 * h + '/');
+		}
+		
+		for (int i = 0; i < _query.length; i += 4) {
+			h = hash(_source, _query[i], _query[i + 1], 31 * h + '&');
+			h = hash(_source, _query[i + 2], _query[i + 3], 31 * h + '=');
+		}
+		
+		return h;
+	}
+	
+	private static int hash(CharSequence s, int start, int end, int h) {
+		
+		for (int i = start; i < end; i++) {
+			h = 31 * h + s.charAt(i);
+		}
+		
+		return h;
+	}
+	
+	private static boolean regionEquals(CharSequence a, int aStart, int aEnd, CharSequence b, int bStart, int bEnd, boolean ignoreCase) {
+		
+		if (aEnd - aStart != bEnd - bStart) {
+			return false;
+		}
+		
+		for (int i = aStart, j = bStart; i < aEnd; i++, j++) {
+			char x = a.charAt(i);
+			char y = b.charAt(j);
+			if (x != y && !(ignoreCase && Character.toLowerCase(x) == Character.toLowerCase(y))) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	private static void checkIndex(int index, int count) {
+		
+		if (index < 0 || index >= count) {
+			throw new IndexOutOfBoundsException("index " + index + ", count " + count);
+		}
+	}
+	
+	private static boolean startsWithIgnoreCase(CharSequence s, String prefix) {
+		
+		if (s.length() < prefix.length()) {
+			return false;
+		}
+		
+		for (int i = 0; i < prefix.length(); i++) {
+			if (Character.toLowerCase(s.charAt(i)) != prefix.charAt(i)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	private static int parsePort(CharSequence url, int start, int end)
+	throws HttpUrlBuilderException {
+		
+		int port = 0;
+		for (int i = start; i < end && port <= 65535; i++) {
+			port = port * 10 + (url.charAt(i) - '0');
+		}
+		
+		if (port <= 0 || port > 65535) {
+			throw new HttpUrlBuilderException(url.subSequence(start, end) + " is not a valid port");
+		}
+		
+		return port;
+	}
+	
+	private static int[] splitPath(CharSequence url, int start, int end) {
+		
+		int count = 0;
+		for (int i = start; i < end; i++) {
+			if (url.charAt(i) != '/' && (i == start || url.charAt(i - 1) == '/')) {
+				count++;
+			}
+		}
+		
+		if (count == 0) {
+			return NONE;
+		}
+		
+		int[] path = new int[2 * count];
+		int n = 0;
+		for (int i = start; i < end; i++) {
+			if (url.charAt(i) == '/') {
+				continue;
+			}
+			
+			path[n++] = i;
+			while (i < end && url.charAt(i) != '/') {
+				i++;
+			}
+			path[n++] = i;
+		}
+		
+		return path;
+	}
+	
+	private static int[] splitQuery(CharSequence url, int start, int end) {
+		
+		int count = 0;
+		for (int i = start; i < end; i++) {
+			if (url.charAt(i) != '&' && (i == start || url.charAt(i - 1) == '&')) {
+				count++;
+			}
+		}
+		
+		if (count == 0) {
+			return NONE;
+		}
+		
+		int[] query = new int[4 * count];
+		int n = 0;
+		for (int i = start; i < end; i++) {
+			if (url.charAt(i) == '&') {
+				continue;
+			}
+			
+			query[n++] = i;
+			while (i < end && url.charAt(i) != '&' && url.charAt(i) != '=') {
+				i++;
+			}
+			query[n++] = i;
+			
+			if (i < end && url.charAt(i) == '=') {
+				i++;
+			}
+			query[n++] = i;
+			while (i < end && url.charAt(i) != '&') {
+				i++;
+			}
+			query[n++] = i;
+		}
+		
+		return query;
+	}
+}
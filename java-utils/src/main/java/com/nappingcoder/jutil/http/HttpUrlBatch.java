@@ -0,0 +1,230 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.http;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>
+ * Builds many URLs that differ from a base URL in a single component, for
+ * example one URL per shard when fanning a request out. The base URL is
+ * taken from an {@link HttpUrlBuilder} and serialized once; each URL then
+ * only costs encoding its own component and copying the shared parts.
+ * </p>
+ * <br/>
+ * <p>
+ * <code>
+ * HttpUrlBatch batch = HttpUrlBatch.from(HttpUrlBuilder.httpBuilder().host("api").addPathElement("shards"));<br/>
+ * List&lt;String&gt; urls = batch.withPathElement(shardIds); // http://api/shards/{id} for each id
+ * </code>
+ * </p>
+ * <br/>
+ * <p>
+ * Large batches can be split across a {@link ForkJoinPool}. Instances are
+ * immutable and can be shared between threads.
+ * </p>
+ *
+ * @author alvinlin
+ *
+ */
+public final class HttpUrlBatch {
+	
+	/** batches up to this size are not worth splitting */
+	private static final int SPLIT_THRESHOLD = 512;
+	
+	private final String _withoutQuery;
+	private final String _query;
+	private final EncodedComponentCache _cache;
+	
+	private HttpUrlBatch(String withoutQuery, String query, EncodedComponentCache cache) {
+		
+		_withoutQuery = withoutQuery;
+		_query = query;
+		_cache = cache;
+	}
+	
+	/**
+	 * Take the current URL of the given builder as the base URL. Changing 
+	 * the builder afterwards does not change the batch. The builder's 
+	 * encoding cache, if it has one, is used for the varying components.
+	 *
+	 * @param base
+	 * @return
+	 * @throws IllegalStateException
+	 */
+	public static HttpUrlBatch from(HttpUrlBuilder base) {
+		
+		return new HttpUrlBatch(base.toStringWithoutQuery(), base.getEncodedQuery(), base.getEncodingCache());
+	}
+	
+	/**
+	 * Build one URL per given element, each being the base URL with that
+	 * element added to the end of its path.
+	 *
+	 * @param elements
+	 * @return URLs in the order of the given elements
+	 * @throws HttpUrlBuilderException if an element is null
+	 */
+	public List<String> withPathElement(List<String> elements)
+	throws HttpUrlBuilderException {
+		
+		return withPathElement(elements, null);
+	}
+	
+	/**
+	 * Same as {@link #withPathElement(List)}, splitting large batches across
+	 * the given pool.
+	 *
+	 * @param elements
+	 * @param pool the pool, or null to build all URLs on the calling thread
+	 * @return
+	 * @throws HttpUrlBuilderException if an element is null
+	 */
+	public List<String> withPathElement(List<String> elements, ForkJoinPool pool)
+	throws HttpUrlBuilderException {
+		
+		for (String element : elements) {
+			if (element == null) {
+				throw new HttpUrlBuilderException("given path element is null");
+			}
+		}
+		
+		String tail = _query.isEmpty() ? "" : "?" + _query;
+		
+		return build(_withoutQuery + "/", elements, tail, pool);
+	}
+	
+	/**
+	 * Build one URL per given value, each being the base URL with a query
+	 * pair of the given name and that value added. Null values are treated
+	 * as empty ones.
+	 *
+	 * @param name
+	 * @param values
+	 * @return URLs in the order of the given values
+	 * @throws HttpUrlBuilderException if the name is null
+	 */
+	public List<String> withQuery(String name, List<String> values)
+	throws HttpUrlBuilderException {
+		
+		return withQuery(name, values, null);
+	}
+	
+	/**
+	 * Same as {@link #withQuery(String, List)}, splitting large batches
+	 * across the given pool.
+	 *
+	 * @param name
+	 * @param values
+	 * @param pool the pool, or null to build all URLs on the calling thread
+	 * @return
+	 * @throws HttpUrlBuilderException if the name is null
+	 */
+	public List<String> withQuery(String name, List<String> values, ForkJoinPool pool)
+	throws HttpUrlBuilderException {
+		
+		if (name == null) {
+			throw new HttpUrlBuilderException("given query name is null");
+		}
+		
+		StringBuilder head = new StringBuilder(_withoutQuery).append('?');
+		if (!_query.isEmpty()) {
+			head.append(_query).append('&');
+		}
+		PercentCodec.encode(name, head);
+		head.append('=');
+		
+		return build(head.toString(), values, "", pool);
+	}
+	
+	private List<String> build(String head, List<String> values, String tail, ForkJoinPool pool) {
+		
+		String[] urls = new String[values.size()];
+		Build build = new Build(head, values, tail, urls, 0, urls.length);
+		
+		if (pool == null || urls.length <= SPLIT_THRESHOLD) {
+			build.compute();
+		} else {
+			pool.invoke(build);
+		}
+		
+		return Collections.unmodifiableList(Arrays.asList(urls));
+	}
+	
+	/**
+	 * Builds the URLs of a range of values, splitting the range in halves
+	 * until it is small enough.
+	 */
+	private final class Build extends RecursiveAction {
+		
+		private static final long serialVersionUID = 5027719630452405431L;
+		
+		private final String _head;
+		private final List<String> _values;
+		private final String _tail;
+		private final String[] _urls;
+		private final int _from;
+		private final int _to;
+		
+		Build(String head, List<String> values, String tail, String[] urls, int from, int to) {
+			
+			_head = head;
+			_values = values;
+			_tail = tail;
+			_urls = urls;
+			_from = from;
+			_to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			
+			if (_to - _from > SPLIT_THRESHOLD) {
+				int middle = (_from + _to) >>> 1;
+				invokeAll(new Build(_head, _values, _tail, _urls, _from, middle),
+						new Build(_head, _values, _tail, _urls, middle, _to));
+				return;
+			}
+			
+			// one buffer for the whole range, the shared head is never re-encoded
+			StringBuilder url = new StringBuilder(_head.length() + _tail.length() + 32);
+			url.append(_head);
+			
+			for (int i = _from; i < _to; i++) {
+				url.setLength(_head.length());
+				
+				String value = _values.get(i);
+				if (value != null) {
+					if (_cache == null) {
+						PercentCodec.encode(value, url);
+					} else {
+						_cache.encode(value, url);
+					}
+				}
+				
+				_urls[i] = url.append(_tail).toString();
+			}
+		}
+	}
+}
@@ -19,11 +19,12 @@
  */
 package com.nappingcoder.jutil.http;
 
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.Map;
-import java.util.Set;
-
-import org.apache.commons.codec.net.URLCodec;
 
 /**
  * <p>
@@ -43,14 +44,31 @@ import org.apache.commons.codec.net.URLCodec;
  */
 public final class HttpUrlBuilder {
 
-	private static final String CHAR_SET = "UTF-8";
+	private static final ThreadLocal<HttpUrlBuilder> REUSABLE_HTTP_BUILDER = new ThreadLocal<HttpUrlBuilder>() {
+		
+		@Override
+		protected HttpUrlBuilder initialValue() {
+			return new HttpUrlBuilder(false);
+		}
+	};
+	
+	private static final ThreadLocal<HttpUrlBuilder> REUSABLE_HTTPS_BUILDER = new ThreadLocal<HttpUrlBuilder>() {
+		
+		@Override
+		protected HttpUrlBuilder initialValue() {
+			return new HttpUrlBuilder(true);
+		}
+	};
 	
 	private StringBuilder _query = new StringBuilder();
 	private StringBuilder _path = new StringBuilder();
-	private URLCodec _codec = new URLCodec();
+	private StringBuilder _url = new StringBuilder();
+	private char[] _chars = new char[0];
+	private byte[] _bytes = new byte[0];
 	private String _protocol;
 	private String _host = "";
 	private int _port;
+	private EncodedComponentCache _cache;
 	
 	public static HttpUrlBuilder httpBuilder() {
 		
@@ -61,6 +79,55 @@ public final class HttpUrlBuilder {
 		return new HttpUrlBuilder(true);
 	}
 	
+	/**
+	 * Create a builder holding the components of the given URL. Path 
+	 * elements and query pairs are copied as they are, without being 
+	 * re-encoded.
+	 * 
+	 * @param url
+	 * @return
+	 */
+	public static HttpUrlBuilder from(HttpUrl url) {
+		
+		HttpUrlBuilder builder = new HttpUrlBuilder(url.isSecure());
+		builder._host = url.getHost();
+		builder._port = url.getPort();
+		
+		for (int i = 0; i < url.getPathElementCount(); i++) {
+			builder.addPathElement(url, i);
+		}
+		
+		for (int i = 0; i < url.getQueryCount(); i++) {
+			builder.addQuery(url, i);
+		}
+		
+		return builder;
+	}
+	
+	/**
+	 * Get the HTTP builder owned by the calling thread, {@link #reset()} and
+	 * ready for use. The builder and its buffers are reused by every call made
+	 * on the same thread, so the returned builder must not be kept around or
+	 * handed to another thread, and must be done with before this method is 
+	 * called again on the same thread.
+	 * 
+	 * @return
+	 */
+	public static HttpUrlBuilder reusableHttpBuilder() {
+		
+		return REUSABLE_HTTP_BUILDER.get().reset();
+	}
+	
+	/**
+	 * Same as {@link #reusableHttpBuilder()}, but for HTTPS.
+	 * 
+	 * @return
+	 */
+	public static HttpUrlBuilder reusableHttpSecureBuilder() {
+		
+		return REUSABLE_HTTPS_BUILDER.get().reset();
+	}
+	
 	private HttpUrlBuilder(boolean https) {
 		
 		if (https) {
@@ -71,6 +138,41 @@ public final class HttpUrlBuilder {
 		
 	}
 	
+	/**
+	 * Clear the host, port, path, query and encoding cache so this builder
+	 * can be used to build another URL. The protocol is kept, and so are the
+	 * internal buffers, which is what makes reusing a builder cheaper than
+	 * creating a new one.
+	 * 
+	 * @return
+	 */
+	public HttpUrlBuilder reset() {
+		
+		_host = "";
+		_port = 0;
+		_path.setLength(0);
+		_query.setLength(0);
+		_cache = null;
+		
+		return this;
+	}
+	
+	/**
+	 * Use the given cache to encode path elements and query names and values.
+	 * The cache is meant to be shared by many builders. It is dropped by
+	 * {@link #reset()}, so a reusable builder never carries the cache of
+	 * one caller into the next.
+	 * 
+	 * @param cache the cache, or null to stop using one
+	 * @return
+	 */
+	public HttpUrlBuilder encodingCache(EncodedComponentCache cache) {
+		
+		_cache = cache;
+		
+		return this;
+	}
+	
 	/**
 	 * Set the host.
 	 * 
@@ -131,11 +233,8 @@ public final class HttpUrlBuilder {
 				continue;
 			}
 			
-			try {
-				_path.append(_codec.encode(elt, CHAR_SET)).append("/");
-			} catch (UnsupportedEncodingException e) {
-				throw new HttpUrlBuilderException("unsupported char set (you really shouldn't see this though..)", e);
-			}
+			encode(elt, _path);
+			_path.append('/');
 		}
 		
 		return this;
@@ -144,17 +243,36 @@ public final class HttpUrlBuilder {
 	public HttpUrlBuilder addPathElement(String element)
 			throws HttpUrlBuilderException {
 		
-		try {
-			_path.append(_codec.encode(element, CHAR_SET)).append("/");
-		} catch (UnsupportedEncodingException e) {
-			throw new HttpUrlBuilderException("unsupported char set (you really shouldn't see this though..)", e);
+		if (element == null) {
+			throw new HttpUrlBuilderException("given path element is null");
 		}
 		
+		encode(element, _path);
+		_path.append('/');
+		
 		return this;
 	}
 	
 	/**
-	 * Add a key value pair to the query string. 
+	 * Add the path element at the given index of the given URL, as it 
+	 * is encoded in that URL.
+	 * 
+	 * @param url
+	 * @param index
+	 * @return
+	 * @throws IndexOutOfBoundsException if the URL does not have such path element
+	 */
+	public HttpUrlBuilder addPathElement(HttpUrl url, int index) {
+		
+		url.appendEncodedPathElement(index, _path);
+		_path.append('/');
+		
+		return this;
+	}
+	
+	/**
+	 * Add a key value pair to the query string. A null value is
+	 * treated as an empty one.
 	 * 
 	 * @param name
 	 * @param value
@@ -164,13 +282,29 @@ public final class HttpUrlBuilder {
 	public HttpUrlBuilder addQuery(String name, String value)
 	throws HttpUrlBuilderException {
 		
-		try {
-			_query.append(_codec.encode(name, CHAR_SET)).append("=").append(_codec.encode(value, CHAR_SET)).append("&");
-		} catch (UnsupportedEncodingException e) {
-			//really shouln't get here though....
-			throw new HttpUrlBuilderException("unsupported char set (you really shouldn't see this though...)", e);
+		if (name == null) {
+			throw new HttpUrlBuilderException("given query name is null");
 		}
 		
+		appendQuery(name, value);
+		
+		return this;
+	}
+	
+	/**
+	 * Add the query pair at the given index of the given URL, as it 
+	 * is encoded in that URL.
+	 * 
+	 * @param url
+	 * @param index
+	 * @return
+	 * @throws IndexOutOfBoundsException if the URL does not have such query pair
+	 */
+	public HttpUrlBuilder addQuery(HttpUrl url, int index) {
+		
+		url.appendEncodedQuery(index, _query);
+		_query.append('&');
+		
 		return this;
 	}
 	
@@ -188,13 +322,136 @@ public final class HttpUrlBuilder {
 			return this;
 		}
 		
-		Set<String> names = nvPair.keySet();
-		for (String n : names) {
-			String v = nvPair.get(n);
-			if (v == null) {
-				v = "";
+		int mark = _query.length();
+		int length = 0;
+		for (Map.Entry<String, String> nv : nvPair.entrySet()) {
+			length += lengthOf(nv.getKey()) + lengthOf(nv.getValue()) + 2;
+		}
+		_query.ensureCapacity(mark + length);
+		
+		for (Map.Entry<String, String> nv : nvPair.entrySet()) {
+			if (nv.getKey() == null) {
+				_query.setLength(mark);
+				throw new HttpUrlBuilderException("given query name is null");
+			}
+			appendQuery(nv.getKey(), nv.getValue());
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Add a key value pair to the query string for each value of each 
+	 * name in the given map, so a name can be repeated. Each name is 
+	 * encoded once, no matter how many values it has. Null values are
+	 * treated as empty ones.
+	 * 
+	 * @param nvPairs
+	 * @return
+	 * @throws HttpUrlBuilderException if a name is null, in which case nothing is added
+	 */
+	public HttpUrlBuilder addQueries(Map<String, ? extends Iterable<String>> nvPairs)
+	throws HttpUrlBuilderException {
+		
+		if (nvPairs == null) {
+			return this;
+		}
+		
+		int mark = _query.length();
+		int length = 0;
+		for (Map.Entry<String, ? extends Iterable<String>> nv : nvPairs.entrySet()) {
+			if (nv.getValue() == null) {
+				continue;
+			}
+			for (String v : nv.getValue()) {
+				length += lengthOf(nv.getKey()) + lengthOf(v) + 2;
+			}
+		}
+		_query.ensureCapacity(mark + length);
+		
+		for (Map.Entry<String, ? extends Iterable<String>> nv : nvPairs.entrySet()) {
+			if (nv.getKey() == null) {
+				_query.setLength(mark);
+				throw new HttpUrlBuilderException("given query name is null");
+			}
+			
+			if (nv.getValue() == null) {
+				continue;
+			}
+			
+			int nameStart = -1;
+			int nameEnd = -1;
+			for (String v : nv.getValue()) {
+				if (nameStart < 0) {
+					nameStart = _query.length();
+					encode(nv.getKey(), _query);
+					nameEnd = _query.length();
+				} else {
+					_query.append(_query, nameStart, nameEnd);
+				}
+				
+				_query.append('=');
+				if (v != null) {
+					encode(v, _query);
+				}
+				_query.append('&');
 			}
-			addQuery(n, v);
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Add a key value pair to the query string for each name and the value
+	 * at the same index. Null values are treated as empty ones.
+	 * 
+	 * @param names
+	 * @param values
+	 * @return
+	 * @throws HttpUrlBuilderException if the arrays have different lengths or a 
+	 * name is null, in which case nothing is added
+	 */
+	public HttpUrlBuilder addQuery(String[] names, String[] values)
+	throws HttpUrlBuilderException {
+		
+		if (names.length != values.length) {
+			throw new HttpUrlBuilderException(names.length + " names but " + values.length + " values given");
+		}
+		
+		int length = 0;
+		for (int i = 0; i < names.length; i++) {
+			if (names[i] == null) {
+				throw new HttpUrlBuilderException("given query name is null");
+			}
+			length += names[i].length() + lengthOf(values[i]) + 2;
+		}
+		_query.ensureCapacity(_query.length() + length);
+		
+		for (int i = 0; i < names.length; i++) {
+			appendQuery(names[i], values[i]);
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Add all key value pairs of the given container to the query string.
+	 * 
+	 * @param params
+	 * @return
+	 */
+	public HttpUrlBuilder addQuery(QueryParams params) {
+		
+		int size = params.size();
+		
+		int length = 0;
+		for (int i = 0; i < size; i++) {
+			length += params.getName(i).length() + params.getValue(i).length() + 2;
+		}
+		_query.ensureCapacity(_query.length() + length);
+		
+		for (int i = 0; i < size; i++) {
+			appendQuery(params.getName(i), params.getValue(i));
 		}
 		
 		return this;
@@ -214,42 +471,205 @@ public final class HttpUrlBuilder {
 	
 	/**
 	 * 
-	 * Build a new HTTP URL string.
+	 * Build a new HTTP URL string. The URL is assembled in a buffer owned
+	 * by this builder, so the returned string is the only allocation.
 	 *  
 	 * @return
 	 * @throws IllegalStateException
 	 */
 	public String toString() {
 		
+		return assemble().toString();
+	}
+	
+	/**
+	 * Build an immutable {@link HttpUrl} value holding the current URL,
+	 * for example to be used as a map key. Changing this builder 
+	 * afterwards does not change the returned value.
+	 * 
+	 * @return
+	 * @throws IllegalStateException
+	 */
+	public HttpUrl build() {
+		
+		String url = toString();
+		
+		try {
+			return HttpUrl.parse(url);
+		} catch (HttpUrlBuilderException e) {
+			// only happens if the host itself is not valid
+			throw new IllegalStateException(url + " is not a valid URL", e);
+		}
+	}
+	
+	/**
+	 * Append the HTTP URL to the given {@link Appendable} without creating
+	 * a string for it.
+	 * 
+	 * @param appendable
+	 * @return the given appendable
+	 * @throws IOException
+	 * @throws IllegalStateException
+	 */
+	public <A extends Appendable> A appendTo(A appendable)
+	throws IOException {
+		
+		StringBuilder url = assemble();
+		
+		if (appendable instanceof Writer) {
+			// Writer.append(CharSequence) would turn the URL into a string first
+			int length = url.length();
+			if (_chars.length < length) {
+				_chars = new char[length];
+			}
+			url.getChars(0, length, _chars, 0);
+			((Writer) appendable).write(_chars, 0, length);
+		} else {
+			appendable.append(url);
+		}
+		
+		return appendable;
+	}
+	
+	/**
+	 * Write the HTTP URL as US-ASCII bytes into the given buffer, starting
+	 * at its current position. Nothing is written if the URL does not fit.
+	 * 
+	 * @param buffer
+	 * @return number of bytes written
+	 * @throws BufferOverflowException if the buffer does not have enough room left
+	 * @throws IllegalStateException
+	 */
+	public int writeTo(ByteBuffer buffer) {
+		
+		int length = toAsciiBytes();
+		
+		if (buffer.remaining() < length) {
+			throw new BufferOverflowException();
+		}
+		
+		buffer.put(_bytes, 0, length);
+		
+		return length;
+	}
+	
+	/**
+	 * Write the HTTP URL as US-ASCII bytes into the given stream.
+	 * 
+	 * @param out
+	 * @throws IOException
+	 * @throws IllegalStateException
+	 */
+	public void writeTo(OutputStream out)
+	throws IOException {
+		
+		int length = toAsciiBytes();
+		out.write(_bytes, 0, length);
+	}
+	
+	private void appendQuery(String name, String value) {
+		
+		encode(name, _query);
+		_query.append('=');
+		if (value != null) {
+			encode(value, _query);
+		}
+		_query.append('&');
+	}
+	
+	private void encode(String s, StringBuilder buffer) {
+		
+		if (_cache == null) {
+			PercentCodec.encode(s, buffer);
+		} else {
+			_cache.encode(s, buffer);
+		}
+	}
+	
+	private static int lengthOf(String s) {
+		
+		return s == null ? 0 : s.length();
+	}
+	
+	/**
+	 * Get the URL without its query string.
+	 */
+	String toStringWithoutQuery() {
+		
+		StringBuilder url = assemble();
+		
+		// the query takes "?" plus its buffer minus the trailing separator
+		return url.substring(0, url.length() - _query.length());
+	}
+	
+	/**
+	 * Get the encoded query string, without the leading "?".
+	 */
+	String getEncodedQuery() {
+		
+		return _query.length() == 0 ? "" : _query.substring(0, _query.length() - 1);
+	}
+	
+	EncodedComponentCache getEncodingCache() {
+		
+		return _cache;
+	}
+	
+	/**
+	 * Assemble the URL into this builder's URL buffer.
+	 */
+	private StringBuilder assemble() {
+		
 		verifyState();
 		
-		StringBuilder url = new StringBuilder();
+		StringBuilder url = _url;
+		url.setLength(0);
 		
 		url
 		.append(_protocol).append("://").append(_host);
 		
 		if (_port > 0) {
-			url.append(":"+_port);
+			url.append(':').append(_port);
 		}
 		
+		// both buffers always end with a separator, which is not part of the URL
 		if (_path.length() > 0) {
-
-			if (_path.length() > 0 && _path.charAt(_path.length() - 1) == '/') {
-				_path.setLength(_path.length() - 1);
-			}
-			
-			url.append("/").append(_path);
+			url.append('/').append(_path, 0, _path.length() - 1);
 		}
 		
 		if (_query.length() > 0) {
-			url.append("?").append(_query);
+			url.append('?').append(_query, 0, _query.length() - 1);
 		}
 		
-		if (url.charAt(url.length() - 1) == '&') {
-			url.setLength(url.length() - 1);
+		return url;
+	}
+	
+	/**
+	 * Assemble the URL into this builder's byte buffer. Everything but the 
+	 * host is percent-encoded already, so the only thing to check is that
+	 * the host is plain ASCII.
+	 * 
+	 * @return number of bytes in the byte buffer
+	 */
+	private int toAsciiBytes() {
+		
+		StringBuilder url = assemble();
+		int length = url.length();
+		
+		if (_bytes.length < length) {
+			_bytes = new byte[length];
+		}
+		
+		byte[] bytes = _bytes;
+		for (int i = 0; i < length; i++) {
+			char c = url.charAt(i);
+			if (c >= 128) {
+				throw new IllegalStateException("host must be ASCII (IDN encoded) to write the URL as bytes: " + _host);
+			}
+			bytes[i] = (byte) c;
 		}
 		
-		return url.toString();
+		return length;
 	}
 	
 	private void verifyState() {
@@ -0,0 +1,281 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.http;
+
+import java.nio.charset.Charset;
+
+/**
+ * UTF-8 percent-encoder used by the builders in this package. Produces
+ * the same output as commons-codec's <code>URLCodec</code> with UTF-8
+ * (the <code>application/x-www-form-urlencoded</code> flavor): letters,
+ * digits and <code>-_.*</code> are kept, space becomes <code>+</code> and
+ * everything else is percent-encoded as UTF-8.
+ *
+ * <p>
+ * Encoding is done straight into the caller's buffer, without any
+ * intermediate byte array or string. Decoding works on a range of the
+ * caller's characters and only allocates when there is something to decode.
+ * </p>
+ *
+ * @author alvinlin
+ *
+ */
+final class PercentCodec {
+	
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+	
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	private static final boolean[] SAFE = new boolean[128];
+	
+	static {
+		for (char c = 'a'; c <= 'z'; c++) {
+			SAFE[c] = true;
+		}
+		for (char c = 'A'; c <= 'Z'; c++) {
+			SAFE[c] = true;
+		}
+		for (char c = '0'; c <= '9'; c++) {
+			SAFE[c] = true;
+		}
+		SAFE['-'] = true;
+		SAFE['_'] = true;
+		SAFE['.'] = true;
+		SAFE['*'] = true;
+	}
+	
+	private PercentCodec() {
+	}
+	
+	/**
+	 * Test if the given character is kept as is by the encoder.
+	 *
+	 * @param c
+	 * @return
+	 */
+	static boolean isSafe(char c) {
+		
+		return c < 128 && SAFE[c];
+	}
+	
+	/**
+	 * Find the index of the first character in the given string that
+	 * needs encoding.
+	 *
+	 * @param s
+	 * @return index of the first unsafe character, or the length of the
+	 * string if there is none
+	 */
+	static int firstUnsafe(CharSequence s) {
+		
+		int len = s.length();
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			if (c >= 128 || !SAFE[c]) {
+				return i;
+			}
+		}
+		
+		return len;
+	}
+	
+	/**
+	 * Percent-encode the given string and append it to the given buffer.
+	 * Strings that need no encoding are appended with a single copy.
+	 *
+	 * @param s
+	 * @param out
+	 */
+	static void encode(CharSequence s, StringBuilder out) {
+		
+		int len = s.length();
+		int i = firstUnsafe(s);
+		
+		if (i == len) {
+			out.append(s);
+			return;
+		}
+		
+		out.ensureCapacity(out.length() + len + 16);
+		out.append(s, 0, i);
+		
+		for (; i < len; i++) {
+			char c = s.charAt(i);
+			
+			if (c < 128) {
+				if (SAFE[c]) {
+					out.append(c);
+				} else if (c == ' ') {
+					out.append('+');
+				} else {
+					appendByte(c, out);
+				}
+			} else if (c < 0x800) {
+				appendByte(0xC0 | (c >> 6), out);
+				appendByte(0x80 | (c & 0x3F), out);
+			} else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+				if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+					int cp = Character.toCodePoint(c, s.charAt(++i));
+					appendByte(0xF0 | (cp >> 18), out);
+					appendByte(0x80 | ((cp >> 12) & 0x3F), out);
+					appendByte(0x80 | ((cp >> 6) & 0x3F), out);
+					appendByte(0x80 | (cp & 0x3F), out);
+				} else {
+					// same replacement String.getBytes("UTF-8") uses for a lone surrogate
+					appendByte('?', out);
+				}
+			} else {
+				appendByte(0xE0 | (c >> 12), out);
+				appendByte(0x80 | ((c >> 6) & 0x3F), out);
+				appendByte(0x80 | (c & 0x3F), out);
+			}
+		}
+	}
+	
+	private static void appendByte(int b, StringBuilder out) {
+		
+		out.append('%').append(HEX[(b >> 4) & 0x0F]).append(HEX[b & 0x0F]);
+	}
+	
+	/**
+	 * Find the index of the first malformed escape (a <code>%</code> not 
+	 * followed by two hex digits) in the given range.
+	 * 
+	 * @param s
+	 * @param start
+	 * @param end
+	 * @return index of the malformed escape, or -1 if there is none
+	 */
+	static int firstMalformed(CharSequence s, int start, int end) {
+		
+		for (int i = start; i < end; i++) {
+			if (s.charAt(i) == '%') {
+				if (i + 2 >= end || hexValue(s.charAt(i + 1)) < 0 || hexValue(s.charAt(i + 2)) < 0) {
+					return i;
+				}
+				i += 2;
+			}
+		}
+		
+		return -1;
+	}
+	
+	/**
+	 * Decode the given range, which must not contain malformed escapes.
+	 * <code>+</code> is decoded as space and invalid UTF-8 as U+FFFD.
+	 * 
+	 * @param s
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	static String decode(CharSequence s, int start, int end) {
+		
+		int i = firstEncoded(s, start, end);
+		if (i == end) {
+			return s.subSequence(start, end).toString();
+		}
+		
+		StringBuilder out = new StringBuilder(end - start);
+		out.append(s, start, i);
+		
+		byte[] bytes = null;
+		while (i < end) {
+			char c = s.charAt(i);
+			
+			if (c == '+') {
+				out.append(' ');
+				i++;
+			} else if (c == '%') {
+				if (bytes == null) {
+					bytes = new byte[(end - i) / 3];
+				}
+				
+				int n = 0;
+				while (i < end && s.charAt(i) == '%') {
+					bytes[n++] = (byte) ((hexValue(s.charAt(i + 1)) << 4) | hexValue(s.charAt(i + 2)));
+					i += 3;
+				}
+				out.append(new String(bytes, 0, n, UTF_8));
+			} else {
+				out.append(c);
+				i++;
+			}
+		}
+		
+		return out.toString();
+	}
+	
+	/**
+	 * Test if the given range decodes to the given string. Only allocates
+	 * when the range actually contains escapes.
+	 * 
+	 * @param s
+	 * @param start
+	 * @param end
+	 * @param decoded
+	 * @return
+	 */
+	static boolean decodesTo(CharSequence s, int start, int end, String decoded) {
+		
+		if (firstEncoded(s, start, end) < end) {
+			return decode(s, start, end).equals(decoded);
+		}
+		
+		if (end - start != decoded.length()) {
+			return false;
+		}
+		
+		for (int i = start; i < end; i++) {
+			if (s.charAt(i) != decoded.charAt(i - start)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	private static int firstEncoded(CharSequence s, int start, int end) {
+		
+		for (int i = start; i < end; i++) {
+			char c = s.charAt(i);
+			if (c == '%' || c == '+') {
+				return i;
+			}
+		}
+		
+		return end;
+	}
+	
+	private static int hexValue(char c) {
+		
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		}
+		if (c >= 'A' && c <= 'F') {
+			return c - 'A' + 10;
+		}
+		if (c >= 'a' && c <= 'f') {
+			return c - 'a' + 10;
+		}
+		
+		return -1;
+	}
+}
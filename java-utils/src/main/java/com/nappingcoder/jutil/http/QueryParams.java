@@ -0,0 +1,136 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.http;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * An ordered list of query name value pairs, in which names can repeat. 
+ * Add the whole list to a builder with {@link HttpUrlBuilder#addQuery(QueryParams)}.
+ * </p>
+ * <br/>
+ * <p>
+ * The pairs are kept in two growing arrays; {@link #clear()} keeps them, so
+ * an instance can be reused to build many URLs without allocating. Not
+ * thread safe.
+ * </p>
+ * 
+ * @author alvinlin
+ *
+ */
+public final class QueryParams {
+	
+	private String[] _names;
+	private String[] _values;
+	private int _size;
+	
+	public QueryParams() {
+		
+		this(8);
+	}
+	
+	public QueryParams(int capacity) {
+		
+		_names = new String[Math.max(capacity, 1)];
+		_values = new String[_names.length];
+	}
+	
+	/**
+	 * Add a name value pair. A null value is treated as an empty one.
+	 * 
+	 * @param name
+	 * @param value
+	 * @return
+	 * @throws IllegalArgumentException if the name is null
+	 */
+	public QueryParams add(String name, String value) {
+		
+		if (name == null) {
+			throw new IllegalArgumentException("given query name is null");
+		}
+		
+		if (_size == _names.length) {
+			_names = Arrays.copyOf(_names, _size * 2);
+			_values = Arrays.copyOf(_values, _size * 2);
+		}
+		
+		_names[_size] = name;
+		_values[_size] = value == null ? "" : value;
+		_size++;
+		
+		return this;
+	}
+	
+	/**
+	 * Add a pair for each of the given values, all with the given name.
+	 * 
+	 * @param name
+	 * @param values
+	 * @return
+	 * @throws IllegalArgumentException if the name is null
+	 */
+	public QueryParams addAll(String name, Iterable<String> values) {
+		
+		for (String v : values) {
+			add(name, v);
+		}
+		
+		return this;
+	}
+	
+	public int size() {
+		
+		return _size;
+	}
+	
+	public String getName(int index) {
+		
+		checkIndex(index);
+		return _names[index];
+	}
+	
+	public String getValue(int index) {
+		
+		checkIndex(index);
+		return _values[index];
+	}
+	
+	/**
+	 * Remove all pairs, keeping the allocated capacity.
+	 * 
+	 * @return
+	 */
+	public QueryParams clear() {
+		
+		Arrays.fill(_names, 0, _size, null);
+		Arrays.fill(_values, 0, _size, null);
+		_size = 0;
+		
+		return this;
+	}
+	
+	private void checkIndex(int index) {
+		
+		if (index < 0 || index >= _size) {
+			throw new IndexOutOfBoundsException("index " + index + ", size " + _size);
+		}
+	}
+}
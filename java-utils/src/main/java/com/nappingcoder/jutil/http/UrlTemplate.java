@@ -0,0 +1,374 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.http;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * A precompiled HTTP URL with variables, for example
+ * <code>https://api.host:8443/v1/users/{id}/orders?limit={n}</code>.
+ * </p>
+ * <br/>
+ * <p>
+ * The template is parsed and encoded once by {@link #compile(String)},
+ * which checks the protocol and port and that a host is given; like
+ * {@link HttpUrlBuilder}, it takes the host as it is. The constant parts
+ * are kept as already encoded characters, so {@link #expand(Map)} only has
+ * to encode the variable values and copy everything else. Variables can
+ * appear anywhere in the path and in the query string, but not in the
+ * protocol, host or port. The produced URL is the same as the one
+ * {@link HttpUrlBuilder} would produce for the same values.
+ * </p>
+ * <br/>
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ * </p>
+ *
+ * @author alvinlin
+ *
+ */
+public final class UrlTemplate {
+	
+	private final String _template;
+	
+	/** constant parts; a variable sits between each two of them */
+	private final char[][] _literals;
+	
+	/** index into _names of the variable that follows each literal */
+	private final int[] _variables;
+	
+	/** distinct variable names in the order they first appear */
+	private final String[] _names;
+	
+	private final int _literalLength;
+	
+	private UrlTemplate(String template, List<char[]> literals, List<Integer> variables, List<String> names) {
+		
+		_template = template;
+		_literals = literals.toArray(new char[literals.size()][]);
+		_names = names.toArray(new String[names.size()]);
+		_variables = new int[variables.size()];
+		for (int i = 0; i < _variables.length; i++) {
+			_variables[i] = variables.get(i);
+		}
+		
+		int length = 0;
+		for (char[] literal : _literals) {
+			length += literal.length;
+		}
+		_literalLength = length;
+	}
+	
+	/**
+	 * Parse the given template.
+	 *
+	 * @param template
+	 * @return
+	 * @throws HttpUrlBuilderException if the template is not a valid HTTP URL template
+	 */
+	public static UrlTemplate compile(String template)
+	throws HttpUrlBuilderException {
+		
+		if (template == null) {
+			throw new HttpUrlBuilderException("given template is null");
+		}
+		
+		int schemeEnd = template.indexOf("://");
+		if (schemeEnd < 0) {
+			throw new HttpUrlBuilderException(template + " does not start with http:// or https://");
+		}
+		
+		HttpUrlBuilder builder;
+		String scheme = template.substring(0, schemeEnd);
+		if (scheme.equalsIgnoreCase("http")) {
+			builder = HttpUrlBuilder.httpBuilder();
+		} else if (scheme.equalsIgnoreCase("https")) {
+			builder = HttpUrlBuilder.httpSecureBuilder();
+		} else {
+			throw new HttpUrlBuilderException(scheme + " is not a supported protocol");
+		}
+		
+		if (template.indexOf('#') >= 0) {
+			throw new HttpUrlBuilderException("fragments are not supported: " + template);
+		}
+		
+		int authorityStart = schemeEnd + 3;
+		int pathStart = indexOf(template, '/', authorityStart);
+		int queryStart = indexOf(template, '?', authorityStart);
+		if (queryStart < pathStart) {
+			pathStart = queryStart;
+		}
+		
+		String authority = template.substring(authorityStart, pathStart);
+		if (authority.indexOf('{') >= 0) {
+			throw new HttpUrlBuilderException("variables are only supported in path and query: " + template);
+		}
+		
+		int portStart = authority.lastIndexOf(':');
+		if (portStart > authority.lastIndexOf(']')) {
+			try {
+				builder.port(Integer.parseInt(authority.substring(portStart + 1)));
+			} catch (NumberFormatException e) {
+				throw new HttpUrlBuilderException(authority.substring(portStart + 1) + " is not a valid port", e);
+			}
+			authority = authority.substring(0, portStart);
+		}
+		
+		if (authority.isEmpty()) {
+			throw new HttpUrlBuilderException("host must be given: " + template);
+		}
+		
+		checkVariableNames(template, pathStart);
+		
+		Parser parser = new Parser(template);
+		parser.literal.append(builder.host(authority).toString());
+		
+		if (pathStart < queryStart) {
+			for (String element : template.substring(pathStart, queryStart).split("/")) {
+				if (element.isEmpty()) {
+					continue;
+				}
+				
+				parser.literal.append('/');
+				parser.parse(element);
+			}
+		}
+		
+		if (queryStart < template.length()) {
+			char separator = '?';
+			for (String pair : template.substring(queryStart + 1).split("&")) {
+				if (pair.isEmpty()) {
+					continue;
+				}
+				
+				parser.literal.append(separator);
+				separator = '&';
+				
+				int eq = pair.indexOf('=');
+				if (eq < 0) {
+					parser.parse(pair);
+					parser.literal.append('=');
+				} else {
+					parser.parse(pair.substring(0, eq));
+					parser.literal.append('=');
+					parser.parse(pair.substring(eq + 1));
+				}
+			}
+		}
+		
+		parser.literals.add(parser.flush());
+		
+		return new UrlTemplate(template, parser.literals, parser.variables, parser.names);
+	}
+	
+	/**
+	 * Get the names of the variables in this template, in the order they
+	 * first appear.
+	 *
+	 * @return
+	 */
+	public List<String> getVariableNames() {
+		
+		return Collections.unmodifiableList(Arrays.asList(_names));
+	}
+	
+	/**
+	 * Build a URL string, taking the value of each variable from the given map.
+	 * Values are converted with {@link Object#toString()} and then encoded.
+	 *
+	 * @param variables
+	 * @return
+	 * @throws HttpUrlBuilderException if a variable has no value
+	 */
+	public String expand(Map<String, ?> variables)
+	throws HttpUrlBuilderException {
+		
+		if (variables == null) {
+			variables = Collections.emptyMap();
+		}
+		
+		String[] values = new String[_names.length];
+		for (int i = 0; i < values.length; i++) {
+			Object value = variables.get(_names[i]);
+			if (value == null) {
+				throw new HttpUrlBuilderException("no value for variable " + _names[i]);
+			}
+			values[i] = value.toString();
+		}
+		
+		return expandValues(values);
+	}
+	
+	/**
+	 * Build a URL string from the given values, given in the order
+	 * of {@link #getVariableNames()}.
+	 *
+	 * @param values
+	 * @return
+	 * @throws HttpUrlBuilderException if the values are null, their number is wrong or a value is null
+	 */
+	public String expand(Object... values)
+	throws HttpUrlBuilderException {
+		
+		if (values == null) {
+			throw new HttpUrlBuilderException("given values are null");
+		}
+		
+		if (values.length != _names.length) {
+			throw new HttpUrlBuilderException(_template + " has " + _names.length + " variables, " + values.length + " values given");
+		}
+		
+		String[] strings = new String[values.length];
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] == null) {
+				throw new HttpUrlBuilderException("no value for variable " + _names[i]);
+			}
+			strings[i] = values[i].toString();
+		}
+		
+		return expandValues(strings);
+	}
+	
+	/**
+	 * Get the template this was compiled from.
+	 */
+	@Override
+	public String toString() {
+		
+		return _template;
+	}
+	
+	private String expandValues(String[] values) {
+		
+		int length = _literalLength;
+		for (int v : _variables) {
+			length += values[v].length();
+		}
+		
+		StringBuilder url = new StringBuilder(length + 16);
+		url.append(_literals[0]);
+		for (int i = 0; i < _variables.length; i++) {
+			PercentCodec.encode(values[_variables[i]], url);
+			url.append(_literals[i + 1]);
+		}
+		
+		return url.toString();
+	}
+	
+	/**
+	 * Reject variable names holding a character that separates path
+	 * elements or query parameters, which would cut them apart.
+	 */
+	private static void checkVariableNames(String template, int from)
+	throws HttpUrlBuilderException {
+		
+		for (int open = template.indexOf('{', from); open >= 0; open = template.indexOf('{', open + 1)) {
+			int close = template.indexOf('}', open);
+			if (close < 0) {
+				// unmatched, reported by the parser
+				return;
+			}
+			
+			for (int i = open + 1; i < close; i++) {
+				char c = template.charAt(i);
+				if (c == '/' || c == '?' || c == '&' || c == '=') {
+					throw new HttpUrlBuilderException("variable " + template.substring(open, close + 1) + " contains " + c + " in " + template);
+				}
+			}
+		}
+	}
+	
+	private static int indexOf(String s, char c, int from) {
+		
+		int i = s.indexOf(c, from);
+		return i < 0 ? s.length() : i;
+	}
+	
+	/**
+	 * Splits path elements and query names and values into encoded
+	 * literals and variables.
+	 */
+	private static final class Parser {
+		
+		private final String _template;
+		
+		final StringBuilder literal = new StringBuilder();
+		final List<char[]> literals = new ArrayList<char[]>();
+		final List<Integer> variables = new ArrayList<Integer>();
+		final List<String> names = new ArrayList<String>();
+		
+		Parser(String template) {
+			_template = template;
+		}
+		
+		void parse(String component)
+		throws HttpUrlBuilderException {
+			
+			int i = 0;
+			while (i < component.length()) {
+				int open = component.indexOf('{', i);
+				int close = component.indexOf('}', i);
+				
+				if (open < 0) {
+					if (close >= 0) {
+						throw new HttpUrlBuilderException("unmatched } in " + _template);
+					}
+					PercentCodec.encode(component.substring(i), literal);
+					break;
+				}
+				
+				if (close < open) {
+					throw new HttpUrlBuilderException("unmatched " + (close < 0 ? "{" : "}") + " in " + _template);
+				}
+				
+				String name = component.substring(open + 1, close);
+				if (name.isEmpty() || name.indexOf('{') >= 0) {
+					throw new HttpUrlBuilderException("invalid variable {" + name + "} in " + _template);
+				}
+				
+				PercentCodec.encode(component.substring(i, open), literal);
+				literals.add(flush());
+				
+				int index = names.indexOf(name);
+				if (index < 0) {
+					index = names.size();
+					names.add(name);
+				}
+				variables.add(index);
+				
+				i = close + 1;
+			}
+		}
+		
+		char[] flush() {
+			
+			char[] chars = new char[literal.length()];
+			literal.getChars(0, chars.length, chars, 0);
+			literal.setLength(0);
+			
+			return chars;
+		}
+	}
+}
@@ -0,0 +1,315 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.properties;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * An {@link OrderedProperties} for many reader threads and few writers,
+ * for example configuration that is read on every request and reloaded
+ * once in a while.
+ * </p>
+ * <br/>
+ * <p>
+ * Reads never lock: {@link #getProperty(String)}, {@link #get(Object)},
+ * {@link #containsKey(Object)}, {@link #size()}, {@link #propertyNames()},
+ * {@link #stringPropertyNames()}, {@link #keySet()}, {@link #entrySet()}
+ * and {@link #values()} all work on an immutable, ordered snapshot of the
+ * properties, and the collections they return are read-only. Writes are
+ * serialized, and each write publishes a new snapshot, so readers always
+ * see either all or none of a write and never a partially updated order.
+ * Iterating never throws {@link java.util.ConcurrentModificationException}; it goes
+ * through the snapshot taken when it started.
+ * </p>
+ * <br/>
+ * <p>
+ * A write copies the whole snapshot, which is what makes it expensive.
+ * {@link #load(Reader)}, {@link #load(InputStream)},
+ * {@link #load(File, Charset)}, {@link #load(OrderedPropertiesSnapshot)}
+ * and {@link #putAll(Map)} publish a single snapshot when done instead of
+ * one per property.
+ * </p>
+ *
+ */
+public class ConcurrentOrderedProperties extends OrderedProperties {
+	
+	private static final long serialVersionUID = 3958144316211707345L;
+	
+	private transient volatile OrderedStore _snapshot = new OrderedStore().freeze();
+	
+	/** while positive, writes do not publish, guarded by this */
+	private transient int _batch;
+	
+	@Override
+	public String getProperty(String key) {
+		
+		Object value = _snapshot.get(key);
+		String s = (value instanceof String) ? (String) value : null;
+		
+		return (s == null && defaults != null) ? defaults.getProperty(key) : s;
+	}
+	
+	@Override
+	public Object get(Object key) {
+		
+		return _snapshot.get(key);
+	}
+	
+	@Override
+	public boolean containsKey(Object key) {
+		
+		return _snapshot.containsKey(key);
+	}
+	
+	@Override
+	public int size() {
+		
+		return _snapshot.size();
+	}
+	
+	@Override
+	public boolean isEmpty() {
+		
+		return _snapshot.size() == 0;
+	}
+	
+	@Override
+	public boolean containsValue(Object value) {
+		
+		return _snapshot.containsValue(value);
+	}
+	
+	@Override
+	public Enumeration<?> propertyNames() {
+		
+		return keys();
+	}
+	
+	@Override
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public Set<String> stringPropertyNames() {
+		
+		return (Set) _snapshot.keySet();
+	}
+	
+	@Override
+	public Enumeration<Object> keys() {
+		
+		return Collections.enumeration(_snapshot.keySet());
+	}
+	
+	@Override
+	public Enumeration<Object> elements() {
+		
+		return Collections.enumeration(_snapshot.values());
+	}
+	
+	/**
+	 * Keys of the snapshot at the time of the call. Read-only.
+	 */
+	@Override
+	public Set<Object> keySet() {
+		
+		return _snapshot.keySet();
+	}
+	
+	/**
+	 * Entries of the snapshot at the time of the call. Read-only.
+	 */
+	@Override
+	public Set<Map.Entry<Object, Object>> entrySet() {
+		
+		return _snapshot.entrySet();
+	}
+	
+	@Override
+	public Collection<Object> values() {
+		
+		return _snapshot.values();
+	}
+	
+	/**
+	 * Parsed values are kept in the snapshot, so the typed getters do not
+	 * lock either.
+	 */
+	@Override
+	<T> T parsedValue(String key, Class<T> type, Function<String, ? extends T> parser) {
+		
+		return _snapshot.parsed(key, type, parser);
+	}
+	
+	/**
+	 * Resolved values are kept in the snapshot, and handed on to the next
+	 * one, except those built from a property that changed.
+	 */
+	@Override
+	String resolvedValue(String key, Function<String, String> fallback) {
+		
+		return _snapshot.resolved(key, fallback);
+	}
+	
+	/**
+	 * Subsets come from the snapshot without locking. Each snapshot builds
+	 * its own sorted index on the first subset taken from it.
+	 */
+	@Override
+	OrderedStore subsetOf(String prefix) {
+		
+		return _snapshot.subset(prefix);
+	}
+	
+	@Override
+	public synchronized Object put(Object key, Object val) {
+		
+		Object previous = super.put(key, val);
+		publish();
+		
+		return previous;
+	}
+	
+	@Override
+	public synchronized Object remove(Object key) {
+		
+		Object previous = super.remove(key);
+		publish();
+		
+		return previous;
+	}
+	
+	@Override
+	public synchronized void putAll(Map<?, ?> t) {
+		
+		_batch++;
+		try {
+			super.putAll(t);
+		} finally {
+			_batch--;
+			publish();
+		}
+	}
+	
+	@Override
+	public synchronized void clear() {
+		
+		super.clear();
+		publish();
+	}
+	
+	@Override
+	public synchronized void load(Reader reader) throws IOException {
+		
+		_batch++;
+		try {
+			super.load(reader);
+		} finally {
+			_batch--;
+			publish();
+		}
+	}
+	
+	@Override
+	public synchronized void load(InputStream inStream) throws IOException {
+		
+		_batch++;
+		try {
+			super.load(inStream);
+		} finally {
+			_batch--;
+			publish();
+		}
+	}
+	
+	@Override
+	public synchronized void load(File file, Charset charset) throws IOException {
+		
+		_batch++;
+		try {
+			super.load(file, charset);
+		} finally {
+			_batch--;
+			publish();
+		}
+	}
+	
+	@Override
+	public synchronized void load(OrderedPropertiesSnapshot snapshot) {
+		
+		_batch++;
+		try {
+			super.load(snapshot);
+		} finally {
+			_batch--;
+			publish();
+		}
+	}
+	
+	@Override
+	synchronized void replaceWith(OrderedProperties source) {
+		
+		super.replaceWith(source);
+		publish();
+	}
+	
+	/**
+	 * Give the entries of the current snapshot to the reader, without
+	 * holding the lock.
+	 */
+	@Override
+	void readEntries(EntryReader reader) throws IOException {
+		
+		reader.read(_snapshot);
+	}
+	
+	/**
+	 * Build and publish a snapshot of the current properties, unless a
+	 * batch of writes is in progress. Must hold the lock.
+	 */
+	private void publish() {
+		
+		if (_batch > 0) {
+			return;
+		}
+		
+		OrderedStore snapshot = snapshot();
+		snapshot.keepResolved(_snapshot);
+		_snapshot = snapshot;
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		
+		in.defaultReadObject();
+		
+		synchronized (this) {
+			publish();
+		}
+	}
+}
@@ -0,0 +1,338 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.properties;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * Properties stacked in named layers, for example defaults, environment,
+ * tenant and overrides, where a property in a higher layer hides the same
+ * property in the layers below.
+ * </p>
+ * <br/>
+ * <p>
+ * Unlike a chain of {@link java.util.Properties#defaults}, the layers are
+ * kept merged into one table, which is what this instance reads from. So
+ * {@link #getProperty(String)} is a single lookup however many layers there
+ * are, and {@link #propertyNames()}, {@link #keySet()} and the other views
+ * go over the properties of all layers, in the order they first appeared
+ * in any layer. A change to a layer updates only the merged properties it
+ * touches: {@link #setLayer(String, Map)} compares the old and new content
+ * of the layer, and goes through the layers only for keys that differ.
+ * </p>
+ * <br/>
+ * <p>
+ * Writing through the {@link java.util.Properties} methods, including
+ * {@link #load(java.io.Reader)}, goes to the top layer. Removing a property
+ * that way removes it from the top layer only, so a value from a lower
+ * layer may show through afterwards. The views are read-only.
+ * </p>
+ *
+ */
+public class LayeredProperties extends OrderedProperties {
+	
+	private static final long serialVersionUID = -5208671520347306164L;
+	
+	private final String[] _names;
+	
+	/** the layers, lowest first, guarded by this */
+	private OrderedStore[] _layers;
+	
+	/**
+	 * @param layers names of the layers, lowest first
+	 */
+	public LayeredProperties(String... layers) {
+		
+		if (layers.length == 0) {
+			throw new IllegalArgumentException("at least one layer is needed");
+		}
+		
+		_names = layers.clone();
+		_layers = new OrderedStore[layers.length];
+		for (int i = 0; i < layers.length; i++) {
+			_layers[i] = new OrderedStore();
+		}
+	}
+	
+	/**
+	 * Get the names of the layers, lowest first.
+	 */
+	public List<String> getLayerNames() {
+		
+		return Collections.unmodifiableList(Arrays.asList(_names));
+	}
+	
+	/**
+	 * Set a property in the given layer.
+	 *
+	 * @param layer
+	 * @param key
+	 * @param value
+	 * @return the previous value in that layer, or null
+	 */
+	public synchronized String setProperty(String layer, String key, String value) {
+		
+		Object previous = _layers[indexOf(layer)].put(key, value);
+		updateMerged(key);
+		
+		return (String) previous;
+	}
+	
+	/**
+	 * Remove a property from the given layer.
+	 *
+	 * @param layer
+	 * @param key
+	 * @return the value it had in that layer, or null
+	 */
+	public synchronized String removeProperty(String layer, String key) {
+		
+		Object previous = _layers[indexOf(layer)].remove(key);
+		if (previous != null) {
+			updateMerged(key);
+		}
+		
+		return (String) previous;
+	}
+	
+	/**
+	 * Copy the properties of the given layer, in order.
+	 *
+	 * @param layer
+	 * @return
+	 */
+	public synchronized OrderedProperties getLayer(String layer) {
+		
+		OrderedProperties copy = new OrderedProperties();
+		for (Map.Entry<Object, Object> e : _layers[indexOf(layer)].entrySet()) {
+			copy.put(e.getKey(), e.getValue());
+		}
+		
+		return copy;
+	}
+	
+	/**
+	 * Replace the content of the given layer. Only the keys whose value in
+	 * the layer is different afterwards are looked up again.
+	 *
+	 * @param layer
+	 * @param properties
+	 */
+	public synchronized void setLayer(String layer, Map<?, ?> properties) {
+		
+		int i = indexOf(layer);
+		OrderedStore previous = _layers[i];
+		
+		OrderedStore fresh = new OrderedStore(properties.size());
+		for (Map.Entry<?, ?> e : properties.entrySet()) {
+			fresh.put(e.getKey(), e.getValue());
+		}
+		_layers[i] = fresh;
+		
+		for (Object key : previous.keySet()) {
+			if (!fresh.containsKey(key)) {
+				updateMerged(key);
+			}
+		}
+		for (Map.Entry<Object, Object> e : fresh.entrySet()) {
+			if (!e.getValue().equals(previous.get(e.getKey()))) {
+				updateMerged(e.getKey());
+			}
+		}
+	}
+	
+	/**
+	 * Put the property into the top layer.
+	 *
+	 * @return the previous merged value, or null
+	 */
+	@Override
+	public synchronized Object put(Object key, Object value) {
+		
+		Object previous = get(key);
+		_layers[_layers.length - 1].put(key, value);
+		updateMerged(key);
+		
+		return previous;
+	}
+	
+	/**
+	 * Remove the property from the top layer. The property is still there
+	 * afterwards if a lower layer has it.
+	 *
+	 * @return the previous merged value, or null
+	 */
+	@Override
+	public synchronized Object remove(Object key) {
+		
+		Object previous = get(key);
+		if (_layers[_layers.length - 1].remove(key) != null) {
+			updateMerged(key);
+		}
+		
+		return previous;
+	}
+	
+	/**
+	 * Remove all properties from all layers.
+	 */
+	@Override
+	public synchronized void clear() {
+		
+		for (OrderedStore layer : _layers) {
+			layer.clear();
+		}
+		super.clear();
+	}
+	
+	/**
+	 * Load the file into the top layer.
+	 */
+	@Override
+	public synchronized void load(File file, Charset charset) throws IOException {
+		
+		OrderedProperties loaded = new OrderedProperties();
+		loaded.load(file, charset);
+		putAll(loaded);
+	}
+	
+	/**
+	 * Load the snapshot into the top layer.
+	 */
+	@Override
+	public synchronized void load(OrderedPropertiesSnapshot snapshot) {
+		
+		putAll(snapshot.toProperties());
+	}
+	
+	@Override
+	public Set<Object> keySet() {
+		
+		return Collections.unmodifiableSet(super.keySet());
+	}
+	
+	@Override
+	public Set<Map.Entry<Object, Object>> entrySet() {
+		
+		final Set<Map.Entry<Object, Object>> entries = super.entrySet();
+		
+		return new AbstractSet<Map.Entry<Object, Object>>() {
+			
+			@Override
+			public Iterator<Map.Entry<Object, Object>> iterator() {
+				
+				final Iterator<Map.Entry<Object, Object>> i = entries.iterator();
+				
+				return new Iterator<Map.Entry<Object, Object>>() {
+					
+					public boolean hasNext() {
+						
+						return i.hasNext();
+					}
+					
+					public Map.Entry<Object, Object> next() {
+						
+						return new AbstractMap.SimpleImmutableEntry<Object, Object>(i.next());
+					}
+				};
+			}
+			
+			@Override
+			public int size() {
+				
+				return entries.size();
+			}
+		};
+	}
+	
+	@Override
+	public synchronized Object clone() {
+		
+		LayeredProperties clone = (LayeredProperties) super.clone();
+		clone._layers = new OrderedStore[_layers.length];
+		for (int i = 0; i < _layers.length; i++) {
+			clone._layers[i] = new OrderedStore(_layers[i]);
+		}
+		
+		return clone;
+	}
+	
+	/**
+	 * A reload replaces the top layer, so it compares the file with the top
+	 * layer only.
+	 */
+	@Override
+	OrderedProperties reloadBaseline() {
+		
+		return getLayer(_names[_names.length - 1]);
+	}
+	
+	/**
+	 * Replace the top layer with the properties of the given instance, so
+	 * {@link PropertiesReloader} reloads the top layer.
+	 */
+	@Override
+	synchronized void replaceWith(OrderedProperties source) {
+		
+		synchronized (source) {
+			setLayer(_names[_names.length - 1], source);
+			source.clear();
+		}
+	}
+	
+	/**
+	 * Set the merged value of the given key from the highest layer that
+	 * has it, or remove it if none has.
+	 */
+	private void updateMerged(Object key) {
+		
+		for (int i = _layers.length - 1; i >= 0; i--) {
+			Object value = _layers[i].get(key);
+			if (value != null) {
+				super.put(key, value);
+				return;
+			}
+		}
+		
+		super.remove(key);
+	}
+	
+	private int indexOf(String layer) {
+		
+		for (int i = 0; i < _names.length; i++) {
+			if (_names[i].equals(layer)) {
+				return i;
+			}
+		}
+		
+		throw new IllegalArgumentException("no layer named " + layer);
+	}
+}
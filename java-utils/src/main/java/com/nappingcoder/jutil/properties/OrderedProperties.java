@@ -19,14 +19,31 @@
  */
 package com.nappingcoder.jutil.properties;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 /**
  * 
@@ -34,68 +51,807 @@ import java.util.Set;
  * this will remember the order properties were added in. Methods like
  * {@link #propertyNames()} will return property names in order they 
  * were added (or as appeared in your properties file).
+ * <br/>
+ * Properties are kept in a single insertion-ordered hash table, so each key
+ * is stored and hashed once; the {@link Properties} table is not used. Every
+ * method that reads or writes properties is overridden to go to that table,
+ * and {@link #keySet()}, {@link #entrySet()} and {@link #values()} iterate in
+ * order as well. Like {@link java.util.Hashtable}, the views are not
+ * synchronized; hold the lock on this object while iterating them if other
+ * threads may write.
+ * <br/>
+ * The typed getters such as {@link #getInt(String, int)} and
+ * {@link #getList(String)} keep the parsed value next to the property,
+ * so reading the same property again neither parses nor allocates.
+ * {@link #subset(String)} and {@link #subsetView(String)} pick out the
+ * properties under a common prefix without going through all of them.
+ * {@link #getResolvedProperty(String)} resolves <code>${name}</code>
+ * placeholders, once per value until the properties it refers to change.
  *
  */
 public class OrderedProperties extends Properties {
-
+	
 	private static final long serialVersionUID = -2603508716390714885L;
 	
-	private LinkedHashSet<String> _propIndex;
+	private OrderedStore _store;
 	
 	{
-		_propIndex = new LinkedHashSet<String>();
+		_store = new OrderedStore();
+	}
+	
+	/**
+	 * Load properties from the given file, read as ISO 8859-1 like
+	 * {@link #load(java.io.InputStream)} does.
+	 *
+	 * @param file
+	 * @throws IOException
+	 * @see #load(File, Charset)
+	 */
+	public void load(File file) throws IOException {
+		
+		load(file, StandardCharsets.ISO_8859_1);
+	}
+	
+	/**
+	 * Load properties from the given file, in the given charset.
+	 * <br/>
+	 * ISO 8859-1 and UTF-8 files are memory-mapped and parsed straight from
+	 * the bytes, which is much faster than {@link #load(Reader)} for large
+	 * files. The properties go into the table in file order, which is sized
+	 * once up front; {@link #put(Object, Object)} is not called for each of
+	 * them. Other charsets, and files over 2GB, are read through
+	 * {@link #load(Reader)}.
+	 *
+	 * @param file
+	 * @param charset
+	 * @throws IOException
+	 * @throws IllegalArgumentException if the file contains a malformed
+	 * <code>\\uXXXX</code> escape
+	 */
+	public synchronized void load(File file, Charset charset) throws IOException {
+		
+		boolean utf8 = charset.equals(StandardCharsets.UTF_8);
+		
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			
+			if ((utf8 || charset.equals(StandardCharsets.ISO_8859_1)) && size <= Integer.MAX_VALUE) {
+				PropertiesLoader.load(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), utf8, _store);
+			} else {
+				load(Channels.newReader(channel, charset.newDecoder(), -1));
+			}
+		}
+	}
+	
+	/**
+	 * Write the properties in order, in the format of
+	 * {@link Properties#store(Writer, String)}. Entries are escaped into a
+	 * reusable buffer and streamed to the writer.
+	 */
+	@Override
+	public void store(Writer writer, String comments) throws IOException {
+		
+		store(PropertiesWriter.to(writer), comments);
+	}
+	
+	/**
+	 * Write the properties in order, in the format of
+	 * {@link Properties#store(OutputStream, String)}. Entries are escaped into
+	 * a reusable buffer and streamed to the stream.
+	 */
+	@Override
+	public void store(OutputStream out, String comments) throws IOException {
+		
+		store(PropertiesWriter.to(out), comments);
+	}
+	
+	/**
+	 * Write the properties in order to the given channel, in the same
+	 * ISO 8859-1 format as {@link #store(OutputStream, String)}. The
+	 * channel should be in blocking mode.
+	 *
+	 * @param channel
+	 * @param comments
+	 * @throws IOException
+	 */
+	public void store(WritableByteChannel channel, String comments) throws IOException {
+		
+		store(PropertiesWriter.to(channel), comments);
+	}
+	
+	/**
+	 * Write the properties, in order, as a binary snapshot that
+	 * {@link OrderedPropertiesSnapshot#open(File)} can map without parsing.
+	 * The file is replaced in one move once completely written.
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void storeSnapshot(File file) throws IOException {
+		
+		readEntries(entries -> OrderedPropertiesSnapshot.write(entries, file));
+	}
+	
+	/**
+	 * Add all properties of the given snapshot, in order. Like
+	 * {@link #load(File, Charset)}, this goes straight into the table
+	 * without calling {@link #put(Object, Object)} for each property.
+	 *
+	 * @param snapshot
+	 */
+	public synchronized void load(OrderedPropertiesSnapshot snapshot) {
+		
+		snapshot.copyTo(_store);
 	}
 	
 	@Override
 	public Enumeration<?> propertyNames() {
 		
-		final Iterator<String> properties = _propIndex.iterator();
+		return keys();
+	}
+	
+	@Override
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public Set<String> stringPropertyNames() {
 		
+		// keys are the property names, as put by load() and setProperty()
+		return Collections.unmodifiableSet((Set) _store.keySet());
+	}
+	
+	@Override
+	public String getProperty(String key) {
 		
-		return new Enumeration<Object>() {
+		Object value = get(key);
+		String s = (value instanceof String) ? (String) value : null;
+		
+		return (s == null && defaults != null) ? defaults.getProperty(key) : s;
+	}
+	
+	/**
+	 * Get the property with the given key as an int. The parsed value is
+	 * kept next to the property until the property changes, so repeated
+	 * calls do not parse again. The same goes for the other typed getters.
+	 *
+	 * @param key
+	 * @param defaultValue returned if there is no such property
+	 * @return
+	 * @throws NumberFormatException if the value is not an int
+	 */
+	public int getInt(String key, int defaultValue) {
+		
+		Integer value = getParsed(key, Integer.class, OrderedProperties::parseInt);
+		return value != null ? value : defaultValue;
+	}
+	
+	/**
+	 * Get the property with the given key as a long.
+	 *
+	 * @param key
+	 * @param defaultValue returned if there is no such property
+	 * @return
+	 * @throws NumberFormatException if the value is not a long
+	 * @see #getInt(String, int)
+	 */
+	public long getLong(String key, long defaultValue) {
+		
+		Long value = getParsed(key, Long.class, OrderedProperties::parseLong);
+		return value != null ? value : defaultValue;
+	}
+	
+	/**
+	 * Get the property with the given key as a boolean, either
+	 * <code>true</code> or <code>false</code> in any case.
+	 *
+	 * @param key
+	 * @param defaultValue returned if there is no such property
+	 * @return
+	 * @throws IllegalArgumentException if the value is neither true nor false
+	 * @see #getInt(String, int)
+	 */
+	public boolean getBoolean(String key, boolean defaultValue) {
+		
+		Boolean value = getParsed(key, Boolean.class, OrderedProperties::parseBoolean);
+		return value != null ? value : defaultValue;
+	}
+	
+	/**
+	 * Get the property with the given key as a duration. The value is
+	 * either ISO-8601, like <code>PT1M30S</code>, or a number followed by
+	 * one of the units <code>ns us ms s m h d</code>, like <code>500ms</code>.
+	 * A number alone is in milliseconds.
+	 *
+	 * @param key
+	 * @param defaultValue returned if there is no such property
+	 * @return
+	 * @throws IllegalArgumentException if the value is not a duration
+	 * @see #getInt(String, int)
+	 */
+	public Duration getDuration(String key, Duration defaultValue) {
+		
+		Duration value = getParsed(key, Duration.class, OrderedProperties::parseDuration);
+		return value != null ? value : defaultValue;
+	}
+	
+	/**
+	 * Get the property with the given key as a comma separated list.
+	 * Elements are trimmed, and empty ones are left out.
+	 *
+	 * @param key
+	 * @return an unmodifiable list, empty if there is no such property
+	 * @see #getInt(String, int)
+	 */
+	@SuppressWarnings("unchecked")
+	public List<String> getList(String key) {
+		
+		List<String> value = getParsed(key, List.class, OrderedProperties::parseList);
+		return value != null ? value : Collections.<String>emptyList();
+	}
+	
+	/**
+	 * Search for the property with the given key, and replace each
+	 * <code>${name}</code> in its value with the resolved value of the
+	 * property <code>name</code>. Placeholders naming a property that does
+	 * not exist are left as they are.
+	 * <br/>
+	 * Values are resolved when first asked for and the result is kept.
+	 * Changing a property drops the results that were built from it, and
+	 * only those, so each value is resolved once in between.
+	 * <br/>
+	 * Values found in the defaults are resolved in the context of this
+	 * instance, like its own values: a placeholder in a default value names
+	 * a property of this instance first, and of the defaults only if this
+	 * instance does not have it. Later changes to the defaults are not
+	 * noticed.
+	 *
+	 * @param key
+	 * @return the resolved value, or null if there is no such property
+	 * @throws IllegalStateException if the value refers back to itself, directly or not
+	 */
+	public String getResolvedProperty(String key) {
+		
+		return resolvedValue(key, this::getDefault);
+	}
+	
+	/**
+	 * Same as {@link #getResolvedProperty(String)}, returning the given
+	 * default if there is no such property.
+	 *
+	 * @param key
+	 * @param defaultValue
+	 * @return
+	 */
+	public String getResolvedProperty(String key, String defaultValue) {
+		
+		String value = getResolvedProperty(key);
+		return value != null ? value : defaultValue;
+	}
+	
+	/**
+	 * Copy the properties whose key starts with the given prefix, with the
+	 * prefix cut off, in the order they have here. For example
+	 * <code>subset("db.primary.")</code> turns <code>db.primary.url</code>
+	 * into <code>url</code>. Defaults are not included.
+	 * <br/>
+	 * The matching keys are found in a sorted index that is built on first
+	 * use and kept up to date from then on, and put back in order, so this
+	 * takes O(log n + k log k) for k matching properties instead of a scan
+	 * of all of them.
+	 *
+	 * @param prefix
+	 * @return a new instance, independent of this one
+	 * @see #subsetView(String)
+	 */
+	public OrderedProperties subset(String prefix) {
+		
+		OrderedProperties subset = new OrderedProperties();
+		subset._store = subsetOf(prefix);
+		
+		return subset;
+	}
+	
+	/**
+	 * Read-only view of the properties whose key starts with the given
+	 * prefix, with the prefix cut off. Unlike {@link #subset(String)}, it
+	 * follows later changes: each lookup goes to this instance, and each
+	 * iteration finds the matching properties again, in their current order.
+	 * Like {@link #getProperty(String)}, it leaves out values that are not
+	 * strings.
+	 *
+	 * @param prefix
+	 * @return
+	 */
+	public Map<String, String> subsetView(final String prefix) {
+		
+		return new AbstractMap<String, String>() {
 			
-			public boolean hasMoreElements() {
+			@Override
+			public String get(Object key) {
 				
-				return properties.hasNext();
+				if (!(key instanceof String)) {
+					return null;
+				}
 				
+				Object value = OrderedProperties.this.get(prefix + key);
+				return (value instanceof String) ? (String) value : null;
 			}
 			
-			public Object nextElement() {
+			@Override
+			public boolean containsKey(Object key) {
 				
-				return properties.next();
+				return get(key) != null;
 			}
 			
+			@Override
+			@SuppressWarnings({"unchecked", "rawtypes"})
+			public Set<Map.Entry<String, String>> entrySet() {
+				
+				OrderedStore subset = subsetOf(prefix);
+				
+				List<Object> others = new ArrayList<Object>();
+				for (Map.Entry<Object, Object> e : subset.entrySet()) {
+					if (!(e.getValue() instanceof String)) {
+						others.add(e.getKey());
+					}
+				}
+				for (Object key : others) {
+					subset.remove(key);
+				}
+				
+				return (Set) subset.freeze().entrySet();
+			}
 		};
 	}
 	
 	@Override
-	public Set<String> stringPropertyNames() {
+	public synchronized Object get(Object key) {
 		
-		return Collections.unmodifiableSet(_propIndex);
+		return _store.get(key);
 	}
-
+	
 	@Override
 	public synchronized Object put(Object key, Object val) {
-		_propIndex.add(key.toString());
-		return super.put(key, val);		
+		
+		return _store.put(key, val);
 	}
-
+	
 	@Override
 	public synchronized Object remove(Object key) {
 		
-		_propIndex.remove(key);
-		return super.remove(key);
+		return _store.remove(key);
 	}
-
+	
+	@Override
+	public synchronized void putAll(Map<?, ?> t) {
+		
+		_store.ensureCapacity(_store.size() + t.size());
+		for (Map.Entry<?, ?> e : t.entrySet()) {
+			put(e.getKey(), e.getValue());
+		}
+	}
+	
+	@Override
+	public synchronized void clear() {
+		
+		_store.clear();
+	}
+	
+	@Override
+	public synchronized int size() {
+		
+		return _store.size();
+	}
+	
+	@Override
+	public synchronized boolean isEmpty() {
+		
+		return _store.size() == 0;
+	}
+	
+	@Override
+	public synchronized boolean containsKey(Object key) {
+		
+		return _store.containsKey(key);
+	}
+	
+	@Override
+	public synchronized boolean containsValue(Object value) {
+		
+		return _store.containsValue(value);
+	}
+	
+	@Override
+	public synchronized boolean contains(Object value) {
+		
+		return containsValue(value);
+	}
+	
+	@Override
+	public synchronized Enumeration<Object> keys() {
+		
+		return Collections.enumeration(_store.keySet());
+	}
+	
+	@Override
+	public synchronized Enumeration<Object> elements() {
+		
+		return Collections.enumeration(_store.values());
+	}
+	
+	@Override
+	public Set<Object> keySet() {
+		
+		return _store.keySet();
+	}
+	
+	@Override
+	public Set<Map.Entry<Object, Object>> entrySet() {
+		
+		return _store.entrySet();
+	}
+	
 	@Override
 	public Collection<Object> values() {
 		
-		ArrayList<Object> values = new ArrayList<Object>(this.size());
+		return Collections.unmodifiableCollection(_store.values());
+	}
+	
+	@Override
+	public synchronized Object getOrDefault(Object key, Object defaultValue) {
 		
-		for (String key : _propIndex) {
-			values.add(get(key));
+		Object value = _store.get(key);
+		return value != null ? value : defaultValue;
+	}
+	
+	@Override
+	public synchronized void forEach(BiConsumer<? super Object, ? super Object> action) {
+		
+		for (Map.Entry<Object, Object> e : _store.entrySet()) {
+			action.accept(e.getKey(), e.getValue());
+		}
+	}
+	
+	@Override
+	public synchronized void replaceAll(BiFunction<? super Object, ? super Object, ?> function) {
+		
+		for (Map.Entry<Object, Object> e : _store.entrySet()) {
+			// replacing a value is not a structural change, iterating goes on
+			put(e.getKey(), function.apply(e.getKey(), e.getValue()));
 		}
+	}
+	
+	@Override
+	public synchronized Object putIfAbsent(Object key, Object value) {
+		
+		Object previous = _store.get(key);
+		return previous != null ? previous : put(key, value);
+	}
+	
+	@Override
+	public synchronized boolean remove(Object key, Object value) {
+		
+		Object current = _store.get(key);
+		if (current == null || !current.equals(value)) {
+			return false;
+		}
+		remove(key);
+		
+		return true;
+	}
+	
+	@Override
+	public synchronized boolean replace(Object key, Object oldValue, Object newValue) {
+		
+		Object current = _store.get(key);
+		if (current == null || !current.equals(oldValue)) {
+			return false;
+		}
+		put(key, newValue);
+		
+		return true;
+	}
+	
+	@Override
+	public synchronized Object replace(Object key, Object value) {
+		
+		return _store.containsKey(key) ? put(key, value) : null;
+	}
+	
+	@Override
+	public synchronized Object computeIfAbsent(Object key, Function<? super Object, ?> mappingFunction) {
+		
+		Object current = _store.get(key);
+		if (current != null) {
+			return current;
+		}
+		
+		Object value = mappingFunction.apply(key);
+		if (value != null) {
+			put(key, value);
+		}
+		
+		return value;
+	}
+	
+	@Override
+	public synchronized Object computeIfPresent(Object key, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+		
+		Object current = _store.get(key);
+		if (current == null) {
+			return null;
+		}
+		
+		return update(key, remappingFunction.apply(key, current));
+	}
+	
+	@Override
+	public synchronized Object compute(Object key, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+		
+		return update(key, remappingFunction.apply(key, _store.get(key)));
+	}
+	
+	@Override
+	public synchronized Object merge(Object key, Object value, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+		
+		Object current = _store.get(key);
+		
+		return update(key, current == null ? value : remappingFunction.apply(current, value));
+	}
+	
+	@Override
+	public synchronized boolean equals(Object o) {
+		
+		if (o == this) {
+			return true;
+		}
+		if (!(o instanceof Map)) {
+			return false;
+		}
+		
+		Map<?, ?> other = (Map<?, ?>) o;
+		if (other.size() != _store.size()) {
+			return false;
+		}
+		
+		for (Map.Entry<Object, Object> e : _store.entrySet()) {
+			if (!e.getValue().equals(other.get(e.getKey()))) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	@Override
+	public synchronized int hashCode() {
+		
+		int h = 0;
+		for (Map.Entry<Object, Object> e : _store.entrySet()) {
+			h += e.hashCode();
+		}
+		
+		return h;
+	}
+	
+	@Override
+	public synchronized String toString() {
+		
+		StringBuilder sb = new StringBuilder().append('{');
+		
+		Iterator<Map.Entry<Object, Object>> entries = _store.entrySet().iterator();
+		while (entries.hasNext()) {
+			Map.Entry<Object, Object> e = entries.next();
+			sb.append(e.getKey()).append('=').append(e.getValue());
+			if (entries.hasNext()) {
+				sb.append(", ");
+			}
+		}
+		
+		return sb.append('}').toString();
+	}
+	
+	@Override
+	public synchronized Object clone() {
+		
+		OrderedProperties clone = (OrderedProperties) super.clone();
+		clone._store = new OrderedStore(_store);
+		
+		return clone;
+	}
+	
+	/**
+	 * Get the parsed value of the given key from the table, holding the lock.
+	 */
+	<T> T parsedValue(String key, Class<T> type, Function<String, ? extends T> parser) {
+		
+		synchronized (this) {
+			return _store.parsed(key, type, parser);
+		}
+	}
+	
+	/**
+	 * Get the resolved value of the given key from the table, holding the lock.
+	 */
+	String resolvedValue(String key, Function<String, String> fallback) {
+		
+		synchronized (this) {
+			return _store.resolved(key, fallback);
+		}
+	}
+	
+	/**
+	 * Get the properties starting with the given prefix, holding the lock.
+	 */
+	OrderedStore subsetOf(String prefix) {
+		
+		synchronized (this) {
+			return _store.subset(prefix);
+		}
+	}
+	
+	/**
+	 * Give the entries to the given reader, holding the lock while it runs.
+	 */
+	void readEntries(EntryReader reader) throws IOException {
+		
+		synchronized (this) {
+			reader.read(_store);
+		}
+	}
+	
+	/**
+	 * The properties that {@link #replaceWith(OrderedProperties)} replaces,
+	 * for {@link PropertiesReloader} to compare a file with. Must hold the
+	 * lock.
+	 */
+	OrderedProperties reloadBaseline() {
+		
+		return this;
+	}
+	
+	/**
+	 * Take over all properties of the given instance, in its order, in
+	 * place of the current ones. The given instance is left empty.
+	 */
+	synchronized void replaceWith(OrderedProperties source) {
+		
+		synchronized (source) {
+			_store = source._store;
+			source._store = new OrderedStore();
+		}
+	}
+	
+	/**
+	 * Compacted, read-only copy of the properties. Must hold the lock.
+	 */
+	OrderedStore snapshot() {
+		
+		return new OrderedStore(_store).freeze();
+	}
+	
+	private void store(PropertiesWriter writer, String comments) throws IOException {
+		
+		if (comments != null) {
+			writer.writeComments(comments);
+		}
+		writer.writeDate();
+		readEntries(writer::writeEntries);
+		writer.flush();
+	}
+	
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private <T> T getParsed(String key, Class type, Function<String, ? extends T> parser) {
+		
+		T value = (T) parsedValue(key, type, parser);
+		
+		// defaults are not ours to keep parsed values for
+		if (value == null && defaults != null) {
+			String s = defaults.getProperty(key);
+			if (s != null) {
+				value = parser.apply(s);
+			}
+		}
+		
+		return value;
+	}
+	
+	private String getDefault(String name) {
+		
+		return defaults != null ? defaults.getProperty(name) : null;
+	}
+	
+	private static Integer parseInt(String s) {
+		
+		return Integer.valueOf(s.trim());
+	}
+	
+	private static Long parseLong(String s) {
+		
+		return Long.valueOf(s.trim());
+	}
+	
+	private static Boolean parseBoolean(String s) {
+		
+		String trimmed = s.trim();
+		if (trimmed.equalsIgnoreCase("true")) {
+			return Boolean.TRUE;
+		}
+		if (trimmed.equalsIgnoreCase("false")) {
+			return Boolean.FALSE;
+		}
+		
+		throw new IllegalArgumentException(s + " is not a boolean");
+	}
+	
+	private static Duration parseDuration(String s) {
+		
+		String trimmed = s.trim();
+		if (trimmed.startsWith("P") || trimmed.startsWith("-P")) {
+			return Duration.parse(trimmed);
+		}
+		
+		int unitStart = trimmed.length();
+		while (unitStart > 0 && Character.isLetter(trimmed.charAt(unitStart - 1))) {
+			unitStart--;
+		}
+		
+		long amount;
+		try {
+			amount = Long.parseLong(trimmed.substring(0, unitStart).trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(s + " is not a duration", e);
+		}
+		
+		switch (trimmed.substring(unitStart)) {
+		case "ns":
+			return Duration.ofNanos(amount);
+		case "us":
+			return Duration.ofNanos(amount * 1000);
+		case "":
+		case "ms":
+			return Duration.ofMillis(amount);
+		case "s":
+			return Duration.ofSeconds(amount);
+		case "m":
+			return Duration.ofMinutes(amount);
+		case "h":
+			return Duration.ofHours(amount);
+		case "d":
+			return Duration.ofDays(amount);
+		default:
+			throw new IllegalArgumentException(s + " is not a duration");
+		}
+	}
+	
+	private static List<String> parseList(String s) {
+		
+		List<String> list = new ArrayList<String>();
+		for (String element : s.split(",")) {
+			String trimmed = element.trim();
+			if (!trimmed.isEmpty()) {
+				list.add(trimmed);
+			}
+		}
+		
+		return Collections.unmodifiableList(list);
+	}
+	
+	private Object update(Object key, Object value) {
+		
+		// a null result removes the mapping, like the Map defaults
+		if (value == null) {
+			remove(key);
+		} else {
+			put(key, value);
+		}
+		
+		return value;
+	}
+	
+	/**
+	 * Reads the entries without changing them, for writing them out.
+	 */
+	interface EntryReader {
 		
-		return Collections.unmodifiableCollection(values);
+		void read(OrderedStore entries) throws IOException;
 	}
 }
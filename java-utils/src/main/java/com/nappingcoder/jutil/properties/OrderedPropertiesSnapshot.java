@@ -0,0 +1,460 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.properties;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * <p>
+ * A precompiled, binary form of {@link OrderedProperties}, for configuration
+ * that is read on every start but changes rarely. Written with
+ * {@link OrderedProperties#storeSnapshot(File)} and opened with
+ * {@link #open(File)}.
+ * </p>
+ * <br/>
+ * <p>
+ * Opening a snapshot only memory-maps the file and checks its header;
+ * nothing is parsed or decoded. {@link #getProperty(String)} goes through
+ * the hash index stored in the file and decodes only the value it returns,
+ * so lookups are possible right away. {@link #toProperties()} materializes
+ * everything, in the original order, when a full {@link OrderedProperties}
+ * is needed.
+ * </p>
+ * <br/>
+ * <p>
+ * The file starts with a header (magic, entry count, index size), then
+ * the open-addressed hash index, the entry offsets and the key hashes, all
+ * as big-endian ints. The entries follow in insertion order: key then value,
+ * each as a length-prefixed string stored as ISO 8859-1 when it fits, UTF-16
+ * otherwise. Files are limited to 2GB. Only the header is checked when
+ * opening; an index or entry that points outside the file is reported as
+ * an {@link IllegalStateException} by the lookup that comes across it.
+ * </p>
+ * <br/>
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ * </p>
+ *
+ */
+public final class OrderedPropertiesSnapshot {
+	
+	private static final int MAGIC = 0x4F505331; // "OPS1"
+	
+	private static final int HEADER_SIZE = 12;
+	
+	private final File _file;
+	
+	private final ByteBuffer _buffer;
+	
+	private final int _count;
+	
+	private final int _indexMask;
+	
+	private final int _offsetsStart;
+	
+	private final int _hashesStart;
+	
+	private final int _entriesStart;
+	
+	private OrderedPropertiesSnapshot(File file, ByteBuffer buffer, int count, int indexSize) {
+		
+		_file = file;
+		_buffer = buffer;
+		_count = count;
+		_indexMask = indexSize - 1;
+		_offsetsStart = HEADER_SIZE + indexSize * 4;
+		_hashesStart = _offsetsStart + count * 4;
+		_entriesStart = _hashesStart + count * 4;
+	}
+	
+	/**
+	 * Memory-map the given snapshot file.
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException if the file cannot be read or is not a snapshot
+	 */
+	public static OrderedPropertiesSnapshot open(File file) throws IOException {
+		
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+				throw new IOException(file + " is not a properties snapshot");
+			}
+			
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			int count = buffer.getInt(4);
+			int indexSize = buffer.getInt(8);
+			
+			if (buffer.getInt(0) != MAGIC || count < 0 || indexSize < 1 || Integer.bitCount(indexSize) != 1
+					|| indexSize <= count || HEADER_SIZE + (indexSize + 2L * count) * 4 > size) {
+				throw new IOException(file + " is not a properties snapshot");
+			}
+			
+			return new OrderedPropertiesSnapshot(file, buffer, count, indexSize);
+		}
+	}
+	
+	/**
+	 * Get the number of properties.
+	 */
+	public int size() {
+		
+		return _count;
+	}
+	
+	/**
+	 * Search for the property with the given key.
+	 *
+	 * @param key
+	 * @return the value, or null if there is no such property
+	 */
+	public String getProperty(String key) {
+		
+		int i = indexOf(key);
+		return i < 0 ? null : getValue(i);
+	}
+	
+	/**
+	 * Search for the property with the given key.
+	 *
+	 * @param key
+	 * @param defaultValue
+	 * @return the value, or the given default if there is no such property
+	 */
+	public String getProperty(String key, String defaultValue) {
+		
+		String value = getProperty(key);
+		return value == null ? defaultValue : value;
+	}
+	
+	public boolean containsKey(String key) {
+		
+		return indexOf(key) >= 0;
+	}
+	
+	/**
+	 * Get the key of the i-th property, in insertion order.
+	 *
+	 * @param i
+	 * @return
+	 */
+	public String getKey(int i) {
+		
+		return readString(entryOffset(i));
+	}
+	
+	/**
+	 * Get the value of the i-th property, in insertion order.
+	 *
+	 * @param i
+	 * @return
+	 */
+	public String getValue(int i) {
+		
+		int offset = entryOffset(i);
+		return readString(offset + 4 + byteLength(stringHeader(offset)));
+	}
+	
+	/**
+	 * Get the keys in insertion order. Each key is decoded when it is read.
+	 */
+	public List<String> propertyNames() {
+		
+		return new AbstractList<String>() {
+			
+			@Override
+			public String get(int index) {
+				
+				return getKey(index);
+			}
+			
+			@Override
+			public int size() {
+				
+				return _count;
+			}
+		};
+	}
+	
+	/**
+	 * Decode all properties, in order.
+	 */
+	public OrderedProperties toProperties() {
+		
+		OrderedProperties properties = new OrderedProperties();
+		properties.load(this);
+		
+		return properties;
+	}
+	
+	/**
+	 * Add all properties to the given store, in order.
+	 */
+	void copyTo(OrderedStore store) {
+		
+		store.ensureCapacity(store.size() + _count);
+		for (int i = 0; i < _count; i++) {
+			int offset = entryOffset(i);
+			int valueOffset = offset + 4 + byteLength(stringHeader(offset));
+			store.put(readString(offset), readString(valueOffset));
+		}
+	}
+	
+	/**
+	 * Write the given entries as a snapshot. The file is written to a new
+	 * temporary file next to the target, forced to disk and then moved over
+	 * it, so readers never see half a file, even after a crash, and writers
+	 * never share a temporary file. The temporary file is created like any
+	 * other new file, so the snapshot gets the usual permissions.
+	 */
+	static void write(OrderedStore entries, File file) throws IOException {
+		
+		int count = entries.size();
+		String[] keys = new String[count];
+		String[] values = new String[count];
+		
+		int i = 0;
+		for (Map.Entry<Object, Object> e : entries.entrySet()) {
+			keys[i] = (String) e.getKey();
+			values[i] = (String) e.getValue();
+			i++;
+		}
+		
+		int indexSize = 1;
+		while (indexSize < count * 2) {
+			indexSize <<= 1;
+		}
+		
+		int[] index = new int[indexSize];
+		int[] offsets = new int[count];
+		int[] hashes = new int[count];
+		
+		long offset = HEADER_SIZE + (indexSize + 2L * count) * 4;
+		for (i = 0; i < count; i++) {
+			hashes[i] = keys[i].hashCode();
+			
+			int slot = spread(hashes[i]) & (indexSize - 1);
+			while (index[slot] != 0) {
+				slot = (slot + 1) & (indexSize - 1);
+			}
+			index[slot] = i + 1;
+			
+			offsets[i] = (int) offset;
+			offset += 8 + byteLength(header(keys[i])) + byteLength(header(values[i]));
+			if (offset > Integer.MAX_VALUE) {
+				throw new IOException("properties too large for a snapshot");
+			}
+		}
+		
+		Path target = file.toPath().toAbsolutePath();
+		Path temp = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+		boolean moved = false;
+		try {
+			write(temp, count, indexSize, index, offsets, hashes, keys, values);
+			
+			try {
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+			moved = true;
+		} finally {
+			if (!moved) {
+				Files.deleteIfExists(temp);
+			}
+		}
+	}
+	
+	private static void write(Path temp, int count, int indexSize, int[] index, int[] offsets, int[] hashes,
+			String[] keys, String[] values) throws IOException {
+		
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+			out.writeInt(MAGIC);
+			out.writeInt(count);
+			out.writeInt(indexSize);
+			for (int slot : index) {
+				out.writeInt(slot);
+			}
+			for (int o : offsets) {
+				out.writeInt(o);
+			}
+			for (int h : hashes) {
+				out.writeInt(h);
+			}
+			for (int i = 0; i < count; i++) {
+				writeString(out, keys[i]);
+				writeString(out, values[i]);
+			}
+			out.flush();
+			
+			// on disk before the move, or a crash may leave an empty snapshot
+			channel.force(true);
+		}
+	}
+	
+	private int indexOf(String key) {
+		
+		int hash = key.hashCode();
+		int slot = spread(hash) & _indexMask;
+		
+		// a sound index has an empty slot, a corrupt one may not
+		for (int probes = 0; probes <= _indexMask; probes++) {
+			int i = _buffer.getInt(HEADER_SIZE + slot * 4) - 1;
+			if (i < 0) {
+				return -1;
+			}
+			if (i >= _count) {
+				throw corrupt();
+			}
+			if (_buffer.getInt(_hashesStart + i * 4) == hash && keyEquals(i, key)) {
+				return i;
+			}
+			slot = (slot + 1) & _indexMask;
+		}
+		
+		throw corrupt();
+	}
+	
+	private boolean keyEquals(int i, String key) {
+		
+		int offset = entryOffset(i);
+		int header = stringHeader(offset);
+		if (header >>> 1 != key.length()) {
+			return false;
+		}
+		
+		int p = offset + 4;
+		boolean utf16 = (header & 1) != 0;
+		for (int j = 0; j < key.length(); j++) {
+			char c = utf16 ? _buffer.getChar(p + j * 2) : (char) (_buffer.get(p + j) & 0xFF);
+			if (c != key.charAt(j)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	private int entryOffset(int i) {
+		
+		if (i < 0 || i >= _count) {
+			throw new IndexOutOfBoundsException(i + " is not between 0 and " + _count);
+		}
+		
+		return _buffer.getInt(_offsetsStart + i * 4);
+	}
+	
+	/**
+	 * Read the header of the string at the given offset, checking that the
+	 * string lies within the entries.
+	 */
+	private int stringHeader(int offset) {
+		
+		if (offset < _entriesStart || offset > _buffer.capacity() - 4) {
+			throw corrupt();
+		}
+		
+		int header = _buffer.getInt(offset);
+		long end = offset + 4L + ((header & 1) != 0 ? (header >>> 1) * 2L : header >>> 1);
+		if (end > _buffer.capacity()) {
+			throw corrupt();
+		}
+		
+		return header;
+	}
+	
+	private IllegalStateException corrupt() {
+		
+		return new IllegalStateException(_file + " is a corrupt properties snapshot");
+	}
+	
+	private String readString(int offset) {
+		
+		int header = stringHeader(offset);
+		char[] chars = new char[header >>> 1];
+		
+		int p = offset + 4;
+		if ((header & 1) != 0) {
+			for (int j = 0; j < chars.length; j++) {
+				chars[j] = _buffer.getChar(p + j * 2);
+			}
+		} else {
+			for (int j = 0; j < chars.length; j++) {
+				chars[j] = (char) (_buffer.get(p + j) & 0xFF);
+			}
+		}
+		
+		return new String(chars);
+	}
+	
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		
+		int header = header(s);
+		out.writeInt(header);
+		if ((header & 1) != 0) {
+			out.writeChars(s);
+		} else {
+			// writes the low byte of each char, which is all there is
+			out.writeBytes(s);
+		}
+	}
+	
+	/**
+	 * Length in chars shifted left by one, the low bit set for UTF-16.
+	 */
+	private static int header(String s) {
+		
+		for (int i = 0; i < s.length(); i++) {
+			if (s.charAt(i) > 0xFF) {
+				return (s.length() << 1) | 1;
+			}
+		}
+		
+		return s.length() << 1;
+	}
+	
+	private static int byteLength(int header) {
+		
+		return (header & 1) != 0 ? header & ~1 : header >>> 1;
+	}
+	
+	private static int spread(int h) {
+		
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,746 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.properties;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * Insertion-ordered hash table behind {@link OrderedProperties}. Keys,
+ * values and hashes live in parallel arrays in the order keys were first
+ * added; an open-addressed table of indexes into those arrays does the
+ * lookups. So each key is hashed and stored once, and iterating is a scan
+ * of the arrays.
+ *
+ * <p>
+ * Removing an entry only clears its slot in the arrays; the slots are
+ * reclaimed when the arrays fill up, by compacting them and rebuilding
+ * the index. Putting a key that is already there replaces its value and
+ * keeps its position.
+ * </p>
+ *
+ * <p>
+ * For prefix lookups, a sorted set of the keys is built the first time
+ * {@link #subset(String)} is called and maintained along with the table
+ * after that.
+ * </p>
+ *
+ * <p>
+ * Not thread-safe, callers lock; a {@link #freeze() frozen} store can be
+ * read from any thread once safely published. Nulls are rejected like
+ * {@link java.util.Hashtable} does.
+ * </p>
+ */
+final class OrderedStore implements Serializable {
+	
+	private static final long serialVersionUID = 6409273482113466018L;
+	
+	private static final int MIN_CAPACITY = 8;
+	
+	/** index into the arrays plus one, 0 for an empty slot; twice the capacity long */
+	private transient int[] _index;
+	
+	private transient Object[] _keys;
+	
+	private transient Object[] _values;
+	
+	private transient int[] _hashes;
+	
+	/** parsed form of each value for the typed getters, allocated on first use */
+	private transient Object[] _parsed;
+	
+	/** string keys in sorted order for prefix lookups, built on first use */
+	private transient TreeSet<String> _sorted;
+	
+	/** resolves placeholders in values and keeps the results, created on first use */
+	private transient volatile PlaceholderResolver _resolver;
+	
+	/** slots in the arrays used so far, removed ones included */
+	private transient int _end;
+	
+	private transient int _size;
+	
+	private transient int _modCount;
+	
+	/** set on snapshots, which must not change once published */
+	private transient boolean _frozen;
+	
+	OrderedStore() {
+		
+		this(MIN_CAPACITY);
+	}
+	
+	OrderedStore(int expectedSize) {
+		
+		allocate(capacityFor(expectedSize));
+	}
+	
+	/**
+	 * Compacted copy of the given store.
+	 */
+	OrderedStore(OrderedStore source) {
+		
+		allocate(capacityFor(source._size));
+		if (source._parsed != null) {
+			_parsed = new Object[_keys.length];
+		}
+		
+		for (int i = 0; i < source._end; i++) {
+			if (source._keys[i] != null) {
+				append(source._keys[i], source._values[i], source._hashes[i]);
+				if (_parsed != null) {
+					_parsed[_end - 1] = source._parsed[i];
+				}
+			}
+		}
+		
+		if (source._sorted != null) {
+			_sorted = new TreeSet<String>(source._sorted);
+		}
+	}
+	
+	/**
+	 * Make this store read-only, including through its views.
+	 *
+	 * @return this store
+	 */
+	OrderedStore freeze() {
+		
+		// readers on other threads fill it in, so it must be there up front
+		if (_parsed == null) {
+			_parsed = new Object[_keys.length];
+		}
+		_frozen = true;
+		return this;
+	}
+	
+	int size() {
+		
+		return _size;
+	}
+	
+	Object get(Object key) {
+		
+		int i = indexOf(key);
+		return i < 0 ? null : _values[i];
+	}
+	
+	boolean containsKey(Object key) {
+		
+		return indexOf(key) >= 0;
+	}
+	
+	boolean containsValue(Object value) {
+		
+		if (value == null) {
+			throw new NullPointerException();
+		}
+		
+		for (int i = 0; i < _end; i++) {
+			if (_keys[i] != null && value.equals(_values[i])) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Add the given entry at the end, or replace the value in place if
+	 * the key is already there.
+	 *
+	 * @return the previous value, or null
+	 */
+	Object put(Object key, Object value) {
+		
+		if (key == null || value == null) {
+			throw new NullPointerException();
+		}
+		checkMutable();
+		
+		int hash = hash(key);
+		int i = indexOf(key, hash);
+		if (i >= 0) {
+			Object previous = _values[i];
+			_values[i] = value;
+			if (_parsed != null) {
+				_parsed[i] = null;
+			}
+			if (_resolver != null) {
+				_resolver.changed(key);
+			}
+			return previous;
+		}
+		
+		if (_end == _keys.length) {
+			// compact when at least a quarter is removed slots, grow otherwise
+			resize(_size < _keys.length - (_keys.length >> 2) ? _keys.length : _keys.length << 1);
+		}
+		append(key, value, hash);
+		if (_sorted != null && key instanceof String) {
+			_sorted.add((String) key);
+		}
+		if (_resolver != null) {
+			_resolver.changed(key);
+		}
+		_modCount++;
+		
+		return null;
+	}
+	
+	/**
+	 * @return the removed value, or null
+	 */
+	Object remove(Object key) {
+		
+		int i = indexOf(key);
+		if (i < 0) {
+			return null;
+		}
+		
+		Object previous = _values[i];
+		removeAt(i);
+		
+		return previous;
+	}
+	
+	void clear() {
+		
+		checkMutable();
+		Arrays.fill(_index, 0);
+		Arrays.fill(_keys, 0, _end, null);
+		Arrays.fill(_values, 0, _end, null);
+		if (_parsed != null) {
+			Arrays.fill(_parsed, 0, _end, null);
+		}
+		if (_sorted != null) {
+			_sorted.clear();
+		}
+		_resolver = null;
+		_end = 0;
+		_size = 0;
+		_modCount++;
+	}
+	
+	/**
+	 * Make room for the given number of entries, so adding them does not
+	 * resize more than once.
+	 */
+	void ensureCapacity(int expectedSize) {
+		
+		int capacity = capacityFor(expectedSize);
+		if (capacity > _keys.length) {
+			resize(capacity);
+		}
+	}
+	
+	/**
+	 * Get the value of the given key as parsed by the given parser. The
+	 * result is kept next to the entry until its value changes, so each
+	 * value is parsed once. A frozen store can be read this way from any
+	 * thread; racing readers may both parse, which is harmless as long as
+	 * parsed values are immutable.
+	 *
+	 * @return null if the key is missing or its value is not a string
+	 */
+	<T> T parsed(Object key, Class<T> type, Function<String, ? extends T> parser) {
+		
+		int i = indexOf(key);
+		if (i < 0 || !(_values[i] instanceof String)) {
+			return null;
+		}
+		
+		Object[] parsed = _parsed;
+		if (parsed == null) {
+			parsed = _parsed = new Object[_keys.length];
+		}
+		
+		Object cached = parsed[i];
+		if (type.isInstance(cached)) {
+			return type.cast(cached);
+		}
+		
+		T value = parser.apply((String) _values[i]);
+		parsed[i] = value;
+		
+		return value;
+	}
+	
+	/**
+	 * Get the value of the given key with its <code>${name}</code>
+	 * placeholders resolved. Results are kept until a key they were built
+	 * from changes; see {@link PlaceholderResolver}.
+	 *
+	 * @param fallback looks up names that are not in this store
+	 * @return null if the key is missing or its value is not a string
+	 */
+	String resolved(String key, Function<String, String> fallback) {
+		
+		PlaceholderResolver resolver = _resolver;
+		if (resolver == null) {
+			synchronized (this) {
+				// readers of a frozen store may get here at the same time
+				resolver = _resolver;
+				if (resolver == null) {
+					resolver = _resolver = new PlaceholderResolver(this);
+				}
+			}
+		}
+		
+		return resolver.resolve(key, fallback);
+	}
+	
+	/**
+	 * Take over the resolved values of the given store, except those built
+	 * from a key whose value is different here. Must be called before this
+	 * store is shared.
+	 */
+	void keepResolved(OrderedStore previous) {
+		
+		PlaceholderResolver resolver = previous._resolver;
+		if (resolver != null) {
+			PlaceholderResolver kept = new PlaceholderResolver(this);
+			kept.keep(resolver);
+			_resolver = kept;
+		}
+	}
+	
+	/**
+	 * Copy the entries whose key starts with the given prefix, in order,
+	 * with the prefix cut off their keys. Finds them in the sorted index
+	 * and sorts their positions back into order, so it takes
+	 * O(log n + k log k) for k matching keys.
+	 */
+	OrderedStore subset(String prefix) {
+		
+		NavigableSet<String> matching = sortedKeys().tailSet(prefix, true);
+		
+		int[] positions = new int[8];
+		int count = 0;
+		for (String key : matching) {
+			if (!key.startsWith(prefix)) {
+				break;
+			}
+			if (count == positions.length) {
+				positions = Arrays.copyOf(positions, count << 1);
+			}
+			positions[count++] = indexOf(key);
+		}
+		
+		// back to insertion order
+		Arrays.sort(positions, 0, count);
+		
+		OrderedStore subset = new OrderedStore(count);
+		for (int j = 0; j < count; j++) {
+			int i = positions[j];
+			String key = ((String) _keys[i]).substring(prefix.length());
+			subset.append(key, _values[i], hash(key));
+		}
+		
+		return subset;
+	}
+	
+	/**
+	 * Build the sorted index if needed. Synchronized because readers of
+	 * a frozen store may get here at the same time.
+	 */
+	private synchronized NavigableSet<String> sortedKeys() {
+		
+		if (_sorted == null) {
+			TreeSet<String> sorted = new TreeSet<String>();
+			for (int i = 0; i < _end; i++) {
+				if (_keys[i] instanceof String) {
+					sorted.add((String) _keys[i]);
+				}
+			}
+			_sorted = sorted;
+		}
+		
+		return _sorted;
+	}
+	
+	Set<Object> keySet() {
+		
+		return new AbstractSet<Object>() {
+			
+			@Override
+			public Iterator<Object> iterator() {
+				
+				return new StoreIterator<Object>() {
+					
+					@Override
+					Object get(int i) {
+						
+						return _keys[i];
+					}
+				};
+			}
+			
+			@Override
+			public int size() {
+				
+				return _size;
+			}
+			
+			@Override
+			public boolean contains(Object o) {
+				
+				return containsKey(o);
+			}
+			
+			@Override
+			public boolean remove(Object o) {
+				
+				return OrderedStore.this.remove(o) != null;
+			}
+			
+			@Override
+			public void clear() {
+				
+				OrderedStore.this.clear();
+			}
+		};
+	}
+	
+	Collection<Object> values() {
+		
+		return new AbstractCollection<Object>() {
+			
+			@Override
+			public Iterator<Object> iterator() {
+				
+				return new StoreIterator<Object>() {
+					
+					@Override
+					Object get(int i) {
+						
+						return _values[i];
+					}
+				};
+			}
+			
+			@Override
+			public int size() {
+				
+				return _size;
+			}
+			
+			@Override
+			public boolean contains(Object o) {
+				
+				return o != null && containsValue(o);
+			}
+			
+			@Override
+			public void clear() {
+				
+				OrderedStore.this.clear();
+			}
+		};
+	}
+	
+	Set<Map.Entry<Object, Object>> entrySet() {
+		
+		return new AbstractSet<Map.Entry<Object, Object>>() {
+			
+			@Override
+			public Iterator<Map.Entry<Object, Object>> iterator() {
+				
+				return new StoreIterator<Map.Entry<Object, Object>>() {
+					
+					@Override
+					Map.Entry<Object, Object> get(int i) {
+						
+						return new Entry(_keys[i], _values[i]);
+					}
+				};
+			}
+			
+			@Override
+			public int size() {
+				
+				return _size;
+			}
+			
+			@Override
+			public boolean contains(Object o) {
+				
+				if (!(o instanceof Map.Entry)) {
+					return false;
+				}
+				
+				Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+				Object value = e.getKey() == null ? null : get(e.getKey());
+				
+				return value != null && value.equals(e.getValue());
+			}
+			
+			@Override
+			public boolean remove(Object o) {
+				
+				if (!contains(o)) {
+					return false;
+				}
+				OrderedStore.this.remove(((Map.Entry<?, ?>) o).getKey());
+				
+				return true;
+			}
+			
+			@Override
+			public void clear() {
+				
+				OrderedStore.this.clear();
+			}
+		};
+	}
+	
+	private int indexOf(Object key) {
+		
+		return key == null ? -1 : indexOf(key, hash(key));
+	}
+	
+	private int indexOf(Object key, int hash) {
+		
+		int mask = _index.length - 1;
+		for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+			int i = _index[slot] - 1;
+			if (i < 0) {
+				return -1;
+			}
+			
+			// a removed slot has no key, keep probing past it
+			Object k = _keys[i];
+			if (_hashes[i] == hash && k != null && (k == key || k.equals(key))) {
+				return i;
+			}
+		}
+	}
+	
+	private void append(Object key, Object value, int hash) {
+		
+		int i = _end++;
+		_keys[i] = key;
+		_values[i] = value;
+		_hashes[i] = hash;
+		_size++;
+		
+		int mask = _index.length - 1;
+		int slot = hash & mask;
+		while (_index[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		_index[slot] = i + 1;
+	}
+	
+	private void removeAt(int i) {
+		
+		checkMutable();
+		
+		if (_sorted != null && _keys[i] instanceof String) {
+			_sorted.remove(_keys[i]);
+		}
+		if (_resolver != null) {
+			_resolver.changed(_keys[i]);
+		}
+		
+		// the index still points here, lookups skip the empty key
+		_keys[i] = null;
+		_values[i] = null;
+		if (_parsed != null) {
+			_parsed[i] = null;
+		}
+		_size--;
+		_modCount++;
+	}
+	
+	private void checkMutable() {
+		
+		if (_frozen) {
+			throw new UnsupportedOperationException();
+		}
+	}
+	
+	private void resize(int capacity) {
+		
+		Object[] keys = _keys;
+		Object[] values = _values;
+		int[] hashes = _hashes;
+		Object[] parsed = _parsed;
+		int end = _end;
+		
+		allocate(capacity);
+		if (parsed != null) {
+			_parsed = new Object[capacity];
+		}
+		
+		for (int i = 0; i < end; i++) {
+			if (keys[i] != null) {
+				append(keys[i], values[i], hashes[i]);
+				if (parsed != null) {
+					_parsed[_end - 1] = parsed[i];
+				}
+			}
+		}
+	}
+	
+	private void allocate(int capacity) {
+		
+		_index = new int[capacity << 1];
+		_keys = new Object[capacity];
+		_values = new Object[capacity];
+		_hashes = new int[capacity];
+		_end = 0;
+		_size = 0;
+	}
+	
+	private static int capacityFor(int expectedSize) {
+		
+		int capacity = MIN_CAPACITY;
+		while (capacity < expectedSize) {
+			capacity <<= 1;
+		}
+		
+		return capacity;
+	}
+	
+	private static int hash(Object key) {
+		
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		
+		out.defaultWriteObject();
+		out.writeInt(_size);
+		for (int i = 0; i < _end; i++) {
+			if (_keys[i] != null) {
+				out.writeObject(_keys[i]);
+				out.writeObject(_values[i]);
+			}
+		}
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		
+		in.defaultReadObject();
+		
+		// hashes of the keys may differ in this VM, so rebuild from the entries
+		int size = in.readInt();
+		allocate(capacityFor(size));
+		for (int i = 0; i < size; i++) {
+			put(in.readObject(), in.readObject());
+		}
+	}
+	
+	/**
+	 * Iterates the used slots in order, fails fast on structural changes
+	 * made other than through itself.
+	 */
+	private abstract class StoreIterator<E> implements Iterator<E> {
+		
+		private int _next = advance(0);
+		
+		private int _last = -1;
+		
+		private int _expectedModCount = _modCount;
+		
+		abstract E get(int i);
+		
+		public boolean hasNext() {
+			
+			return _next < _end;
+		}
+		
+		public E next() {
+			
+			if (_modCount != _expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (_next >= _end) {
+				throw new NoSuchElementException();
+			}
+			
+			_last = _next;
+			_next = advance(_next + 1);
+			
+			return get(_last);
+		}
+		
+		public void remove() {
+			
+			if (_last < 0) {
+				throw new IllegalStateException();
+			}
+			if (_modCount != _expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			
+			removeAt(_last);
+			_last = -1;
+			_expectedModCount = _modCount;
+		}
+		
+		private int advance(int i) {
+			
+			while (i < _end && _keys[i] == null) {
+				i++;
+			}
+			
+			return i;
+		}
+	}
+	
+	/**
+	 * Entry whose {@link #setValue(Object)} writes through to the store.
+	 */
+	private final class Entry extends AbstractMap.SimpleEntry<Object, Object> {
+		
+		private static final long serialVersionUID = -2785140935946728105L;
+		
+		Entry(Object key, Object value) {
+			
+			super(key, value);
+		}
+		
+		@Override
+		public Object setValue(Object value) {
+			
+			put(getKey(), value);
+			
+			return super.setValue(value);
+		}
+	}
+}
@@ -0,0 +1,228 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.properties;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Resolves <code>${name}</code> placeholders in the values of an
+ * {@link OrderedStore}, each one when it is first asked for, and keeps
+ * the results.
+ *
+ * <p>
+ * While resolving, it records which keys each result was built from. When
+ * a key changes, {@link #changed(Object)} drops the result of that key and,
+ * following the records, of every key that was built from it, directly or
+ * not; all other results are kept. So each value is resolved once until
+ * something it depends on changes, and resolving many keys that refer to
+ * each other costs time linear in their total length.
+ * </p>
+ *
+ * <p>
+ * Keys that are not in the store are looked up in a fallback, such as the
+ * defaults of the properties, and their values are resolved here like the
+ * others, so their placeholders may name keys of the store. Placeholders
+ * naming a key that does not exist anywhere are left as they are, and
+ * picked up once the key is added. A key that refers back to itself,
+ * directly or not, is an error.
+ * </p>
+ *
+ * <p>
+ * Results are read without locking; resolving and dropping results lock
+ * this resolver. The store must not change while resolving, that is up to
+ * the callers of the store.
+ * </p>
+ */
+final class PlaceholderResolver {
+	
+	private static final String PREFIX = "${";
+	
+	private static final String SUFFIX = "}";
+	
+	private final OrderedStore _store;
+	
+	private final Map<String, String> _resolved = new ConcurrentHashMap<String, String>();
+	
+	/** for each name, the keys whose result used it, guarded by this */
+	private final Map<String, Set<String>> _dependents = new HashMap<String, Set<String>>();
+	
+	PlaceholderResolver(OrderedStore store) {
+		
+		_store = store;
+	}
+	
+	/**
+	 * Get the value of the given key with its placeholders resolved.
+	 *
+	 * @param key
+	 * @param fallback gives the unresolved value of keys that have no string
+	 * value in the store, may return null
+	 * @return null if the key is missing from both
+	 * @throws IllegalStateException if the value refers back to itself
+	 */
+	String resolve(String key, Function<String, String> fallback) {
+		
+		String resolved = _resolved.get(key);
+		if (resolved != null) {
+			return resolved;
+		}
+		
+		synchronized (this) {
+			return resolve(key, fallback, new LinkedHashSet<String>());
+		}
+	}
+	
+	/**
+	 * Take over the results of the given resolver, which works on another
+	 * store, except those built from a key whose value is different in this
+	 * store. Used when a new snapshot of changing properties is published,
+	 * so only what the changes affect is resolved again.
+	 */
+	synchronized void keep(PlaceholderResolver previous) {
+		
+		synchronized (previous) {
+			_resolved.putAll(previous._resolved);
+			for (Map.Entry<String, Set<String>> e : previous._dependents.entrySet()) {
+				_dependents.put(e.getKey(), new HashSet<String>(e.getValue()));
+			}
+		}
+		
+		// names that results were built from, missing ones included
+		Set<String> names = new HashSet<String>(_resolved.keySet());
+		names.addAll(_dependents.keySet());
+		for (String name : names) {
+			if (!Objects.equals(previous._store.get(name), _store.get(name))) {
+				changed(name);
+			}
+		}
+	}
+	
+	/**
+	 * Drop the result of the given key and of all keys built from it.
+	 */
+	synchronized void changed(Object key) {
+		
+		if (!(key instanceof String)) {
+			return;
+		}
+		
+		Deque<String> pending = new ArrayDeque<String>();
+		pending.push((String) key);
+		
+		while (!pending.isEmpty()) {
+			String name = pending.pop();
+			_resolved.remove(name);
+			
+			Set<String> dependents = _dependents.remove(name);
+			if (dependents != null) {
+				for (String dependent : dependents) {
+					pending.push(dependent);
+				}
+			}
+		}
+	}
+	
+	private String resolve(String key, Function<String, String> fallback, Set<String> resolving) {
+		
+		String resolved = _resolved.get(key);
+		if (resolved != null) {
+			return resolved;
+		}
+		
+		Object value = _store.get(key);
+		if (!(value instanceof String)) {
+			value = fallback.apply(key);
+			if (value == null) {
+				return null;
+			}
+		}
+		
+		if (!resolving.add(key)) {
+			List<String> cycle = new ArrayList<String>(resolving);
+			cycle = cycle.subList(cycle.indexOf(key), cycle.size());
+			throw new IllegalStateException("Circular placeholder reference: " + String.join(" -> ", cycle) + " -> " + key);
+		}
+		
+		resolved = interpolate(key, (String) value, fallback, resolving);
+		resolving.remove(key);
+		_resolved.put(key, resolved);
+		
+		return resolved;
+	}
+	
+	private String interpolate(String key, String value, Function<String, String> fallback, Set<String> resolving) {
+		
+		int start = value.indexOf(PREFIX);
+		if (start < 0) {
+			return value;
+		}
+		
+		StringBuilder out = new StringBuilder(value.length() + 16);
+		int copied = 0;
+		
+		while (start >= 0) {
+			int end = value.indexOf(SUFFIX, start + PREFIX.length());
+			if (end < 0) {
+				break;
+			}
+			
+			String name = value.substring(start + PREFIX.length(), end);
+			dependsOn(key, name);
+			
+			String replacement = resolve(name, fallback, resolving);
+			
+			out.append(value, copied, start);
+			if (replacement != null) {
+				out.append(replacement);
+			} else {
+				// unknown names stay as they are
+				out.append(value, start, end + SUFFIX.length());
+			}
+			
+			copied = end + SUFFIX.length();
+			start = value.indexOf(PREFIX, copied);
+		}
+		
+		out.append(value, copied, value.length());
+		
+		return out.toString();
+	}
+	
+	private void dependsOn(String key, String name) {
+		
+		Set<String> dependents = _dependents.get(name);
+		if (dependents == null) {
+			dependents = new HashSet<String>();
+			_dependents.put(name, dependents);
+		}
+		dependents.add(key);
+	}
+}
@@ -0,0 +1,387 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.properties;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Parses the <code>.properties</code> format straight from bytes into an
+ * {@link OrderedStore}, following the same rules as
+ * {@link java.util.Properties#load(java.io.Reader)}: comment lines starting
+ * with <code>#</code> or <code>!</code>, line continuations, the
+ * <code>=</code>, <code>:</code> and whitespace separators, and the
+ * <code>\t \n \r \f \\uXXXX</code> escapes.
+ *
+ * <p>
+ * The bytes are read as ISO 8859-1 or as UTF-8. Both keep line breaks,
+ * separators and escapes as single ASCII bytes, so the structure is found
+ * on the bytes and characters are only decoded when copied into a line.
+ * Buffers without a backing array, such as mapped files, are copied out
+ * in 64KB chunks.
+ * Malformed UTF-8 becomes U+FFFD, as with a decoding reader.
+ * </p>
+ */
+final class PropertiesLoader {
+	
+	private static final char REPLACEMENT = '\uFFFD';
+	
+	/** smallest code point for each UTF-8 sequence length, shorter forms are overlong */
+	private static final int[] MIN_CODE_POINT = {0, 0x80, 0x800, 0x10000};
+	
+	private static final int CHUNK_SIZE = 64 * 1024;
+	
+	/** where chunks are copied from, null once exhausted or for array-backed buffers */
+	private ByteBuffer _source;
+	
+	private final boolean _utf8;
+	
+	private byte[] _chunk;
+	
+	private int _off;
+	
+	private int _len;
+	
+	/** the current logical line, continuations joined */
+	private char[] _line = new char[256];
+	
+	private PropertiesLoader(ByteBuffer bytes, boolean utf8) {
+		
+		_utf8 = utf8;
+		
+		if (bytes.hasArray()) {
+			_chunk = bytes.array();
+			_off = bytes.arrayOffset() + bytes.position();
+			_len = bytes.arrayOffset() + bytes.limit();
+		} else {
+			// mapped and direct buffers are copied out in chunks, scanning
+			// an array is much cheaper than a get() per byte
+			_source = bytes.duplicate();
+			_chunk = new byte[Math.min(CHUNK_SIZE, bytes.remaining())];
+			refill();
+		}
+	}
+	
+	/**
+	 * Add the properties in the given bytes to the given store, in the
+	 * order they appear. The store is sized up front from the number of
+	 * lines in the first 64KB.
+	 *
+	 * @param bytes the remaining bytes are parsed, its position is not changed
+	 * @param utf8 true to read UTF-8, false to read ISO 8859-1
+	 * @param store
+	 * @throws IllegalArgumentException on a malformed <code>\\uXXXX</code> escape
+	 */
+	static void load(ByteBuffer bytes, boolean utf8, OrderedStore store) {
+		
+		PropertiesLoader loader = new PropertiesLoader(bytes, utf8);
+		store.ensureCapacity(store.size() + loader.estimateCount());
+		
+		int len;
+		while ((len = loader.readLine()) >= 0) {
+			loader.add(len, store);
+		}
+	}
+	
+	private boolean refill() {
+		
+		if (_source == null || !_source.hasRemaining()) {
+			return false;
+		}
+		
+		int n = Math.min(_chunk.length, _source.remaining());
+		_source.get(_chunk, 0, n);
+		_off = 0;
+		_len = n;
+		
+		return true;
+	}
+	
+	private int estimateCount() {
+		
+		int sample = Math.min(_len - _off, CHUNK_SIZE);
+		if (sample == 0) {
+			return 0;
+		}
+		
+		int lines = 0;
+		for (int i = _off; i < _off + sample; i++) {
+			if (_chunk[i] == '\n') {
+				lines++;
+			}
+		}
+		
+		long total = (_len - _off) + (_source == null ? 0 : _source.remaining());
+		long estimate = (long) (lines + 1) * total / sample;
+		
+		// a property takes at least two bytes, a line break and a character
+		return (int) Math.min(estimate, total / 2 + 1);
+	}
+	
+	/**
+	 * Read the next logical line into {@link #_line}, skipping blank and
+	 * comment lines, and leading whitespace of each natural line.
+	 *
+	 * @return length of the line, or -1 when there are no more lines
+	 */
+	private int readLine() {
+		
+		int len = 0;
+		boolean skipWhiteSpace = true;
+		boolean appendedLineBegin = false;
+		boolean precedingBackslash = false;
+		boolean skipLF = false;
+		
+		while (_off < _len || refill()) {
+			int c = _chunk[_off++] & 0xFF;
+			
+			if (skipLF) {
+				skipLF = false;
+				if (c == '\n') {
+					continue;
+				}
+			}
+			
+			if (skipWhiteSpace) {
+				if (c == ' ' || c == '\t' || c == '\f') {
+					continue;
+				}
+				if (!appendedLineBegin && (c == '\r' || c == '\n')) {
+					continue;
+				}
+				skipWhiteSpace = false;
+				appendedLineBegin = false;
+			}
+			
+			// as in Properties.load, a comment starts wherever the logical line
+			// is still empty, also right after a continuation
+			if (len == 0 && (c == '#' || c == '!')) {
+				// comments never continue, go to the end of the line
+				while ((_off < _len || refill()) && _chunk[_off] != '\n' && _chunk[_off] != '\r') {
+					_off++;
+				}
+				continue;
+			}
+			
+			if (c != '\n' && c != '\r') {
+				if (len + 2 > _line.length) {
+					_line = Arrays.copyOf(_line, _line.length << 1);
+				}
+				
+				if (c < 0x80 || !_utf8) {
+					_line[len++] = (char) c;
+				} else {
+					len = decode(c, len);
+				}
+				precedingBackslash = (c == '\\') ? !precedingBackslash : false;
+				
+				// copy the plain characters that follow in one go
+				int start = len;
+				while (_off < _len) {
+					int b = _chunk[_off];
+					if (b == '\n' || b == '\r' || b == '\\' || (b < 0 && _utf8)) {
+						break;
+					}
+					if (len + 2 > _line.length) {
+						_line = Arrays.copyOf(_line, _line.length << 1);
+					}
+					_line[len++] = (char) (b & 0xFF);
+					_off++;
+				}
+				if (len > start) {
+					precedingBackslash = false;
+				}
+			} else if (len == 0) {
+				skipWhiteSpace = true;
+			} else if (!(_off < _len || refill())) {
+				// the last line ends here, even if it is empty after dropping the backslash
+				return precedingBackslash ? len - 1 : len;
+			} else if (precedingBackslash) {
+				// drop the backslash and join the next line
+				len--;
+				skipWhiteSpace = true;
+				appendedLineBegin = true;
+				precedingBackslash = false;
+				skipLF = (c == '\r');
+			} else {
+				return len;
+			}
+		}
+		
+		if (len == 0) {
+			return -1;
+		}
+		
+		return precedingBackslash ? len - 1 : len;
+	}
+	
+	/**
+	 * Decode the UTF-8 sequence starting with the given byte into the line.
+	 */
+	private int decode(int lead, int len) {
+		
+		int n;
+		int cp;
+		if ((lead & 0xE0) == 0xC0) {
+			n = 1;
+			cp = lead & 0x1F;
+		} else if ((lead & 0xF0) == 0xE0) {
+			n = 2;
+			cp = lead & 0x0F;
+		} else if ((lead & 0xF8) == 0xF0) {
+			n = 3;
+			cp = lead & 0x07;
+		} else {
+			_line[len++] = REPLACEMENT;
+			return len;
+		}
+		
+		for (int i = 0; i < n; i++) {
+			int b = (_off < _len || refill()) ? _chunk[_off] & 0xFF : 0;
+			if ((b & 0xC0) != 0x80) {
+				// truncated sequence, the byte that broke it is read on its own
+				_line[len++] = REPLACEMENT;
+				return len;
+			}
+			cp = (cp << 6) | (b & 0x3F);
+			_off++;
+		}
+		
+		if (cp < MIN_CODE_POINT[n] || cp > Character.MAX_CODE_POINT
+				|| (cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE)) {
+			_line[len++] = REPLACEMENT;
+		} else if (cp >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+			_line[len++] = Character.highSurrogate(cp);
+			_line[len++] = Character.lowSurrogate(cp);
+		} else {
+			_line[len++] = (char) cp;
+		}
+		
+		return len;
+	}
+	
+	/**
+	 * Split the line into key and value and add them.
+	 */
+	private void add(int limit, OrderedStore store) {
+		
+		int keyLen = 0;
+		int valueStart = limit;
+		boolean hasSep = false;
+		boolean precedingBackslash = false;
+		
+		while (keyLen < limit) {
+			char c = _line[keyLen];
+			if ((c == '=' || c == ':') && !precedingBackslash) {
+				valueStart = keyLen + 1;
+				hasSep = true;
+				break;
+			} else if ((c == ' ' || c == '\t' || c == '\f') && !precedingBackslash) {
+				valueStart = keyLen + 1;
+				break;
+			}
+			
+			precedingBackslash = (c == '\\') ? !precedingBackslash : false;
+			keyLen++;
+		}
+		
+		while (valueStart < limit) {
+			char c = _line[valueStart];
+			if (c != ' ' && c != '\t' && c != '\f') {
+				if (!hasSep && (c == '=' || c == ':')) {
+					hasSep = true;
+				} else {
+					break;
+				}
+			}
+			valueStart++;
+		}
+		
+		store.put(unescape(0, keyLen), unescape(valueStart, limit));
+	}
+	
+	private String unescape(int start, int end) {
+		
+		int i = start;
+		while (i < end && _line[i] != '\\') {
+			i++;
+		}
+		if (i == end) {
+			return new String(_line, start, end - start);
+		}
+		
+		StringBuilder out = new StringBuilder(end - start);
+		out.append(_line, start, i - start);
+		
+		while (i < end) {
+			char c = _line[i++];
+			if (c != '\\') {
+				out.append(c);
+				continue;
+			}
+			if (i == end) {
+				break;
+			}
+			
+			c = _line[i++];
+			if (c == 'u') {
+				if (i + 4 > end) {
+					throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+				}
+				int value = 0;
+				for (int j = 0; j < 4; j++) {
+					int digit = hexValue(_line[i++]);
+					if (digit < 0) {
+						throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+					}
+					value = (value << 4) | digit;
+				}
+				out.append((char) value);
+			} else if (c == 't') {
+				out.append('\t');
+			} else if (c == 'r') {
+				out.append('\r');
+			} else if (c == 'n') {
+				out.append('\n');
+			} else if (c == 'f') {
+				out.append('\f');
+			} else {
+				out.append(c);
+			}
+		}
+		
+		return out.toString();
+	}
+	
+	private static int hexValue(char c) {
+		
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		}
+		if (c >= 'a' && c <= 'f') {
+			return c - 'a' + 10;
+		}
+		if (c >= 'A' && c <= 'F') {
+			return c - 'A' + 10;
+		}
+		
+		return -1;
+	}
+}
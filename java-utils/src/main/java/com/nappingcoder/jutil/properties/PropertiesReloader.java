@@ -0,0 +1,334 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.properties;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * <p>
+ * Keeps an {@link OrderedProperties} in sync with a properties file.
+ * {@link #reload()} parses the file again only if its modification time
+ * or size changed since the last load, works out which keys were added,
+ * changed or removed, and then swaps the new properties in at once and
+ * tells the listeners about all the changes in one {@link Changes}.
+ * </p>
+ * <br/>
+ * <p>
+ * With a {@link ConcurrentOrderedProperties} as target, readers see either
+ * the old or the new file, never a mix, and are never blocked by a reload.
+ * After a reload that changed anything, the properties are in the order
+ * of the new file.
+ * </p>
+ * <br/>
+ * <p>
+ * With a {@link LayeredProperties} as target, the file is the top layer:
+ * it is compared with the top layer, and the changes are those of the
+ * merged properties, so a key that only a lower layer has is not removed.
+ * </p>
+ * <br/>
+ * <p>
+ * {@link #start(ScheduledExecutorService, long, TimeUnit)} polls the file
+ * periodically; {@link #close()} stops polling.
+ * </p>
+ *
+ */
+public final class PropertiesReloader implements Closeable {
+	
+	private final File _file;
+	
+	private final Charset _charset;
+	
+	private final OrderedProperties _target;
+	
+	private final LongSupplier _lastModifiedSource;
+	
+	private final List<Listener> _listeners = new CopyOnWriteArrayList<Listener>();
+	
+	/** modification time and size of the file at the last load, guarded by this */
+	private long _lastModified = -1;
+	private long _lastLength = -1;
+	
+	private volatile ScheduledFuture<?> _polling;
+	
+	/**
+	 * Reload the given ISO 8859-1 file into the given properties.
+	 *
+	 * @param file
+	 * @param target
+	 */
+	public PropertiesReloader(File file, OrderedProperties target) {
+		
+		this(file, StandardCharsets.ISO_8859_1, target);
+	}
+	
+	public PropertiesReloader(File file, Charset charset, OrderedProperties target) {
+		
+		this(file, charset, target, file::lastModified);
+	}
+	
+	/**
+	 * Take the modification time of the file from the given source, so
+	 * tests do not depend on the time resolution of the file system.
+	 */
+	PropertiesReloader(File file, Charset charset, OrderedProperties target, LongSupplier lastModifiedSource) {
+		
+		_file = file;
+		_charset = charset;
+		_target = target;
+		_lastModifiedSource = lastModifiedSource;
+	}
+	
+	public void addListener(Listener listener) {
+		
+		_listeners.add(listener);
+	}
+	
+	public void removeListener(Listener listener) {
+		
+		_listeners.remove(listener);
+	}
+	
+	/**
+	 * Load the file if it changed since the last load, or was never
+	 * loaded, and apply the differences to the target.
+	 * <br/>
+	 * Listeners are called on the calling thread, after the new properties
+	 * are in place, and only if something actually changed. If a listener
+	 * throws, the others are still called and the first exception is
+	 * rethrown afterwards.
+	 *
+	 * @return the changes, empty if the file did not change
+	 * @throws IOException if the file cannot be read; the target is left as it was
+	 */
+	public Changes reload() throws IOException {
+		
+		Changes changes;
+		
+		synchronized (this) {
+			long lastModified = _lastModifiedSource.getAsLong();
+			long length = _file.length();
+			if (lastModified == _lastModified && length == _lastLength) {
+				return Changes.NONE;
+			}
+			
+			OrderedProperties fresh = new OrderedProperties();
+			fresh.load(_file, _charset);
+			
+			// no other writer may slip in between the diff and the swap
+			synchronized (_target) {
+				OrderedProperties baseline = _target.reloadBaseline();
+				changes = Changes.between(baseline, fresh);
+				if (!changes.isEmpty()) {
+					// a target with more than the file, like the lower layers of
+					// LayeredProperties, tells what changed in what it shows
+					OrderedProperties before = null;
+					if (baseline != _target) {
+						before = new OrderedProperties();
+						before.putAll(_target);
+					}
+					
+					_target.replaceWith(fresh);
+					
+					if (before != null) {
+						changes = Changes.between(before, _target);
+					}
+				}
+			}
+			
+			_lastModified = lastModified;
+			_lastLength = length;
+		}
+		
+		if (!changes.isEmpty()) {
+			notifyListeners(changes);
+		}
+		
+		return changes;
+	}
+	
+	/**
+	 * Poll the file with the given executor at a fixed delay. Failures are
+	 * passed to the uncaught exception handler of the polling thread and
+	 * polling goes on.
+	 *
+	 * @param executor
+	 * @param period
+	 * @param unit
+	 * @return this reloader
+	 */
+	public PropertiesReloader start(ScheduledExecutorService executor, long period, TimeUnit unit) {
+		
+		if (_polling != null) {
+			throw new IllegalStateException("already started");
+		}
+		
+		_polling = executor.scheduleWithFixedDelay(new Runnable() {
+			
+			public void run() {
+				
+				try {
+					reload();
+				} catch (Exception e) {
+					Thread current = Thread.currentThread();
+					current.getUncaughtExceptionHandler().uncaughtException(current, e);
+				}
+			}
+		}, 0, period, unit);
+		
+		return this;
+	}
+	
+	/**
+	 * Stop polling. Does nothing if polling was not started.
+	 */
+	@Override
+	public void close() {
+		
+		ScheduledFuture<?> polling = _polling;
+		if (polling != null) {
+			polling.cancel(false);
+		}
+	}
+	
+	private void notifyListeners(Changes changes) {
+		
+		RuntimeException failure = null;
+		
+		for (Listener listener : _listeners) {
+			try {
+				listener.propertiesChanged(changes);
+			} catch (RuntimeException e) {
+				if (failure == null) {
+					failure = e;
+				} else {
+					failure.addSuppressed(e);
+				}
+			}
+		}
+		
+		if (failure != null) {
+			throw failure;
+		}
+	}
+	
+	public interface Listener {
+		
+		public void propertiesChanged(Changes changes);
+	}
+	
+	/**
+	 * What one reload changed. Added and changed keys are in the order of
+	 * the new file, removed keys in the order they had before.
+	 */
+	public static final class Changes {
+		
+		static final Changes NONE = new Changes(
+				Collections.<String, String>emptyMap(),
+				Collections.<String, String>emptyMap(),
+				Collections.<String, String>emptyMap());
+		
+		private final Map<String, String> _added;
+		private final Map<String, String> _changed;
+		private final Map<String, String> _removed;
+		
+		private Changes(Map<String, String> added, Map<String, String> changed, Map<String, String> removed) {
+			
+			_added = Collections.unmodifiableMap(added);
+			_changed = Collections.unmodifiableMap(changed);
+			_removed = Collections.unmodifiableMap(removed);
+		}
+		
+		static Changes between(OrderedProperties before, OrderedProperties after) {
+			
+			Map<String, String> added = new LinkedHashMap<String, String>();
+			Map<String, String> changed = new LinkedHashMap<String, String>();
+			Map<String, String> removed = new LinkedHashMap<String, String>();
+			
+			for (Map.Entry<Object, Object> e : after.entrySet()) {
+				Object previous = before.get(e.getKey());
+				if (previous == null) {
+					added.put((String) e.getKey(), (String) e.getValue());
+				} else if (!previous.equals(e.getValue())) {
+					changed.put((String) e.getKey(), (String) e.getValue());
+				}
+			}
+			
+			for (Map.Entry<Object, Object> e : before.entrySet()) {
+				if (!after.containsKey(e.getKey())) {
+					removed.put((String) e.getKey(), (String) e.getValue());
+				}
+			}
+			
+			if (added.isEmpty() && changed.isEmpty() && removed.isEmpty()) {
+				return NONE;
+			}
+			
+			return new Changes(added, changed, removed);
+		}
+		
+		/**
+		 * Get the new keys and their values.
+		 */
+		public Map<String, String> getAdded() {
+			
+			return _added;
+		}
+		
+		/**
+		 * Get the keys whose value changed, with their new values.
+		 */
+		public Map<String, String> getChanged() {
+			
+			return _changed;
+		}
+		
+		/**
+		 * Get the keys that are gone, with the values they had.
+		 */
+		public Map<String, String> getRemoved() {
+			
+			return _removed;
+		}
+		
+		public boolean isEmpty() {
+			
+			return _added.isEmpty() && _changed.isEmpty() && _removed.isEmpty();
+		}
+		
+		@Override
+		public String toString() {
+			
+			return "added " + _added.keySet() + ", changed " + _changed.keySet() + ", removed " + _removed.keySet();
+		}
+	}
+}
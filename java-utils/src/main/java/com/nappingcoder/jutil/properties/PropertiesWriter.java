@@ -0,0 +1,266 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.properties;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Writes the <code>.properties</code> format the same way
+ * {@link java.util.Properties#store(Writer, String)} and
+ * {@link java.util.Properties#store(OutputStream, String)} do, escaping
+ * straight into one reusable buffer that is drained to the target when
+ * full, instead of building a string per line.
+ *
+ * <p>
+ * Byte targets get ISO 8859-1 with everything outside printable ASCII
+ * written as <code>\\uXXXX</code>, like {@link java.util.Properties#store(OutputStream, String)}.
+ * </p>
+ */
+final class PropertiesWriter {
+	
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+	
+	private static final int BUFFER_SIZE = 8192;
+	
+	private final Writer _writer;
+	
+	private final OutputStream _out;
+	
+	private final WritableByteChannel _channel;
+	
+	private final boolean _escUnicode;
+	
+	private final String _lineSeparator = System.lineSeparator();
+	
+	private final char[] _buf = new char[BUFFER_SIZE];
+	
+	private int _len;
+	
+	private byte[] _bytes;
+	
+	private PropertiesWriter(Writer writer, OutputStream out, WritableByteChannel channel) {
+		
+		_writer = writer;
+		_out = out;
+		_channel = channel;
+		_escUnicode = writer == null;
+		
+		if (_escUnicode) {
+			_bytes = new byte[BUFFER_SIZE];
+		}
+	}
+	
+	static PropertiesWriter to(Writer writer) {
+		
+		return new PropertiesWriter(writer, null, null);
+	}
+	
+	static PropertiesWriter to(OutputStream out) {
+		
+		return new PropertiesWriter(null, out, null);
+	}
+	
+	static PropertiesWriter to(WritableByteChannel channel) {
+		
+		return new PropertiesWriter(null, null, channel);
+	}
+	
+	/**
+	 * Write the given comments, each line prefixed with <code>#</code>
+	 * unless it already starts with <code>#</code> or <code>!</code>.
+	 */
+	void writeComments(String comments) throws IOException {
+		
+		put('#');
+		
+		int len = comments.length();
+		for (int i = 0; i < len; i++) {
+			char c = comments.charAt(i);
+			
+			if (c > '\u00ff') {
+				putUnicode(c);
+			} else if (c == '\n' || c == '\r') {
+				newLine();
+				if (c == '\r' && i + 1 < len && comments.charAt(i + 1) == '\n') {
+					i++;
+				}
+				if (i + 1 == len || (comments.charAt(i + 1) != '#' && comments.charAt(i + 1) != '!')) {
+					put('#');
+				}
+			} else {
+				put(c);
+			}
+		}
+		
+		newLine();
+	}
+	
+	void writeDate() throws IOException {
+		
+		put('#');
+		put(new Date().toString());
+		newLine();
+	}
+	
+	/**
+	 * Write every entry of the given store, in order. Keys and values
+	 * must be strings.
+	 */
+	void writeEntries(OrderedStore store) throws IOException {
+		
+		for (Map.Entry<Object, Object> e : store.entrySet()) {
+			putEscaped((String) e.getKey(), true);
+			put('=');
+			putEscaped((String) e.getValue(), false);
+			newLine();
+		}
+	}
+	
+	/**
+	 * Drain the buffer and flush the target.
+	 */
+	void flush() throws IOException {
+		
+		drain();
+		
+		if (_writer != null) {
+			_writer.flush();
+		} else if (_out != null) {
+			_out.flush();
+		}
+	}
+	
+	private void putEscaped(String s, boolean escapeSpace) throws IOException {
+		
+		int len = s.length();
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			
+			if (c > '=' && c < 127) {
+				if (c == '\\') {
+					put('\\');
+				}
+				put(c);
+				continue;
+			}
+			
+			switch (c) {
+			case ' ':
+				if (i == 0 || escapeSpace) {
+					put('\\');
+				}
+				put(' ');
+				break;
+			case '\t':
+				put('\\');
+				put('t');
+				break;
+			case '\n':
+				put('\\');
+				put('n');
+				break;
+			case '\r':
+				put('\\');
+				put('r');
+				break;
+			case '\f':
+				put('\\');
+				put('f');
+				break;
+			case '=':
+			case ':':
+			case '#':
+			case '!':
+				put('\\');
+				put(c);
+				break;
+			default:
+				if (_escUnicode && (c < 0x0020 || c > 0x007e)) {
+					putUnicode(c);
+				} else {
+					put(c);
+				}
+			}
+		}
+	}
+	
+	private void putUnicode(char c) throws IOException {
+		
+		put('\\');
+		put('u');
+		put(HEX[(c >> 12) & 0xF]);
+		put(HEX[(c >> 8) & 0xF]);
+		put(HEX[(c >> 4) & 0xF]);
+		put(HEX[c & 0xF]);
+	}
+	
+	private void newLine() throws IOException {
+		
+		put(_lineSeparator);
+	}
+	
+	private void put(String s) throws IOException {
+		
+		for (int i = 0; i < s.length(); i++) {
+			put(s.charAt(i));
+		}
+	}
+	
+	private void put(char c) throws IOException {
+		
+		if (_len == _buf.length) {
+			drain();
+		}
+		_buf[_len++] = c;
+	}
+	
+	private void drain() throws IOException {
+		
+		if (_len == 0) {
+			return;
+		}
+		
+		if (_writer != null) {
+			_writer.write(_buf, 0, _len);
+		} else {
+			// only ISO 8859-1 is left once unicode is escaped
+			for (int i = 0; i < _len; i++) {
+				_bytes[i] = (byte) _buf[i];
+			}
+			
+			if (_out != null) {
+				_out.write(_bytes, 0, _len);
+			} else {
+				ByteBuffer bytes = ByteBuffer.wrap(_bytes, 0, _len);
+				while (bytes.hasRemaining()) {
+					_channel.write(bytes);
+				}
+			}
+		}
+		
+		_len = 0;
+	}
+}
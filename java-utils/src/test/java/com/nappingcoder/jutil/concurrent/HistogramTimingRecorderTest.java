@@ -0,0 +1,145 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.concurrent;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class HistogramTimingRecorderTest {
+	
+	@Test
+	public void testRecordsEachType() {
+		
+		HistogramTimingRecorder recorder = new HistogramTimingRecorder();
+		recorder.record("query", 0, 100, 1100, 1150);
+		recorder.record("query", 0, 200, 1200, 1200);
+		recorder.recordCancelled("flush", 0, 50, 60);
+		
+		assertEquals(2, recorder.getTypes().size());
+		assertNull(recorder.getTimings("missing"));
+		
+		HistogramTimingRecorder.Timings query = recorder.getTimings("query");
+		assertEquals(2, query.getQueueTime().getCount());
+		assertEquals(150, query.getQueueTime().getMean(), 0.001);
+		assertEquals(1000, query.getRunTime().getMean(), 0.001);
+		assertEquals(25, query.getCallbackTime().getMean(), 0.001);
+		
+		// cancelled before running, only the call backs count
+		HistogramTimingRecorder.Timings flush = recorder.getTimings("flush");
+		assertEquals(0, flush.getQueueTime().getCount());
+		assertEquals(0, flush.getRunTime().getCount());
+		assertEquals(1, flush.getCallbackTime().getCount());
+		assertEquals(10, flush.getCallbackTime().getMean(), 0.001);
+	}
+	
+	@Test
+	public void testBucketPlacement() {
+		
+		HistogramTimingRecorder recorder = new HistogramTimingRecorder();
+		recorder.record("io", 0, 1000, 1005, 1005);
+		recorder.record("io", 0, 1000, 1009, 1009);
+		recorder.record("io", 0, 1000, 2001000, 2001000);
+		
+		// below 16ns every value has its own bucket, above each power of
+		// two is split in 8, and a percentile is the top of its bucket
+		HistogramTimingRecorder.Timings io = recorder.getTimings("io");
+		assertEquals(5, io.getRunTime().getPercentile(0));
+		assertEquals(9, io.getRunTime().getPercentile(50));
+		assertEquals(2097151, io.getRunTime().getPercentile(100));
+		assertEquals(1023, io.getQueueTime().getPercentile(100));
+		assertEquals(0, io.getCallbackTime().getPercentile(100));
+	}
+	
+	@Test
+	public void testTimesExecutorTasks() throws Exception {
+		
+		HistogramTimingRecorder recorder = new HistogramTimingRecorder();
+		ProactiveExecutorService executor = ProactiveExecutorService.newFixedThreadPool(2, 100, new ThreadPoolExecutor.AbortPolicy());
+		executor.setTimingRecorder(recorder);
+		
+		Answer answer = new Answer();
+		try {
+			for (int i = 0; i < 10; i++) {
+				executor.submit(answer).get();
+			}
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(5, TimeUnit.SECONDS);
+		}
+		
+		assertEquals(Collections.singleton(Answer.class.getName()), recorder.getTypes());
+		HistogramTimingRecorder.Timings timings = recorder.getTimings(Answer.class.getName());
+		assertEquals(10, timings.getQueueTime().getCount());
+		assertEquals(10, timings.getRunTime().getCount());
+		assertEquals(10, timings.getCallbackTime().getCount());
+	}
+	
+	@Test
+	public void testTimesRunTask() {
+		
+		HistogramTimingRecorder recorder = new HistogramTimingRecorder();
+		ProactiveFutureTask<Object> task = new ProactiveFutureTask<Object>(new Runnable() {
+			
+			@Override
+			public void run() {
+			}
+		}, null);
+		task.recordTimings(recorder, "noop");
+		task.run();
+		
+		assertEquals(1, recorder.getTimings("noop").getQueueTime().getCount());
+		assertEquals(1, recorder.getTimings("noop").getRunTime().getCount());
+	}
+	
+	@Test
+	public void testTimesCancelledTask() {
+		
+		HistogramTimingRecorder recorder = new HistogramTimingRecorder();
+		ProactiveFutureTask<Object> task = new ProactiveFutureTask<Object>(new Runnable() {
+			
+			@Override
+			public void run() {
+			}
+		}, null);
+		task.recordTimings(recorder, "noop");
+		task.cancel(false);
+		task.run();
+		
+		// never started, so only the call backs are timed
+		assertEquals(0, recorder.getTimings("noop").getQueueTime().getCount());
+		assertEquals(0, recorder.getTimings("noop").getRunTime().getCount());
+		assertEquals(1, recorder.getTimings("noop").getCallbackTime().getCount());
+	}
+	
+	private static final class Answer implements Callable<Object> {
+		
+		@Override
+		public Object call() {
+			
+			return 42;
+		}
+	}
+}
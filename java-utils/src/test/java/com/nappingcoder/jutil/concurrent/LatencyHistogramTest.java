@@ -0,0 +1,93 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.concurrent;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+	
+	@Test
+	public void testBuckets() {
+		
+		for (long value = 0; value < 100000; value++) {
+			int bucket = LatencyHistogram.bucketOf(value);
+			long highest = LatencyHistogram.highestValueIn(bucket);
+			assertTrue(value <= highest);
+			assertTrue(highest - value <= value / 8);
+			assertEquals(bucket, LatencyHistogram.bucketOf(highest));
+		}
+		
+		assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValueIn(LatencyHistogram.bucketOf(Long.MAX_VALUE)));
+	}
+	
+	@Test
+	public void testPercentiles() {
+		
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentile(99));
+		
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L);
+		}
+		histogram.record(-5);
+		
+		assertEquals(1001, histogram.getCount());
+		assertEquals(0, histogram.getPercentile(0));
+		assertEquals(500000, histogram.getPercentile(50), 500000 / 8);
+		assertEquals(990000, histogram.getPercentile(99), 990000 / 8);
+		assertEquals(1000000, histogram.getPercentile(100), 1000000 / 8);
+		assertEquals(1000.0 * 500500 / 1001, histogram.getMean(), 1);
+		
+		try {
+			histogram.getPercentile(101);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+	
+	@Test
+	public void testConcurrentRecording() throws Exception {
+		
+		final LatencyHistogram histogram = new LatencyHistogram();
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					
+					for (int j = 0; j < 10000; j++) {
+						histogram.record(j);
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		
+		assertEquals(80000, histogram.getCount());
+		assertEquals(4999.5, histogram.getMean(), 0.001);
+	}
+}
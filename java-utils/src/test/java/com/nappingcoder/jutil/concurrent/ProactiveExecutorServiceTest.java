@@ -0,0 +1,174 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.concurrent;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+public class ProactiveExecutorServiceTest {
+	
+	private static final Callable<Integer> ANSWER = new Callable<Integer>() {
+		
+		@Override
+		public Integer call() {
+			
+			return 42;
+		}
+	};
+	
+	@Test
+	public void testSubmitReturnsProactiveTasks() throws Exception {
+		
+		ProactiveExecutorService executor = ProactiveExecutorService.newFixedThreadPool(2, 10, new ThreadPoolExecutor.AbortPolicy());
+		try {
+			final CountDownLatch called = new CountDownLatch(2);
+			ProactiveFutureTask.Callback<Integer> callback = new ProactiveFutureTask.Callback<Integer>() {
+				
+				@Override
+				public void executionFinished(ProactiveFutureTask<Integer> task) {
+					
+					called.countDown();
+				}
+			};
+			
+			ProactiveFutureTask<Integer> task = executor.submit(ANSWER);
+			task.addCallback(callback);
+			executor.submit(ANSWER, callback);
+			
+			assertTrue(called.await(5, TimeUnit.SECONDS));
+			assertEquals(Integer.valueOf(42), task.get());
+			
+			List<Future<Integer>> all = executor.invokeAll(Arrays.asList(ANSWER, ANSWER));
+			for (Future<Integer> future : all) {
+				assertTrue(future instanceof ProactiveFutureTask);
+				assertEquals(Integer.valueOf(42), future.get());
+			}
+			
+			ProactiveFutureTask<String> runnable = executor.submit(new Runnable() {
+				
+				@Override
+				public void run() {
+				}
+			}, "done");
+			assertEquals("done", runnable.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void testBoundedQueueRejects() throws Exception {
+		
+		ProactiveExecutorService executor = ProactiveExecutorService.newFixedThreadPool(1, 1, new ThreadPoolExecutor.AbortPolicy());
+		final CountDownLatch release = new CountDownLatch(1);
+		try {
+			Callable<Integer> blocked = new Callable<Integer>() {
+				
+				@Override
+				public Integer call() throws InterruptedException {
+					
+					release.await();
+					return 1;
+				}
+			};
+			
+			executor.submit(blocked);
+			executor.submit(blocked);
+			try {
+				executor.submit(blocked);
+				fail();
+			} catch (RejectedExecutionException e) {
+				// expected, one running and one queued
+			}
+		} finally {
+			release.countDown();
+			executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void testCallbackExecutor() throws Exception {
+		
+		ExecutorService callbacks = Executors.newSingleThreadExecutor();
+		ProactiveExecutorService executor = ProactiveExecutorService.newFixedThreadPool(1, 10, new ThreadPoolExecutor.AbortPolicy());
+		try {
+			final AtomicReference<Thread> workerThread = new AtomicReference<Thread>();
+			final AtomicReference<Thread> callbackThread = new AtomicReference<Thread>();
+			final CountDownLatch called = new CountDownLatch(1);
+			
+			executor.setCallbackExecutor(callbacks);
+			executor.submit(new Callable<Integer>() {
+				
+				@Override
+				public Integer call() {
+					
+					workerThread.set(Thread.currentThread());
+					return 1;
+				}
+			}, new ProactiveFutureTask.Callback<Integer>() {
+				
+				@Override
+				public void executionFinished(ProactiveFutureTask<Integer> task) {
+					
+					callbackThread.set(Thread.currentThread());
+					called.countDown();
+				}
+			});
+			
+			assertTrue(called.await(5, TimeUnit.SECONDS));
+			assertNotSame(workerThread.get(), callbackThread.get());
+		} finally {
+			executor.shutdownNow();
+			callbacks.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void testVirtualThreadPerTask() throws Exception {
+		
+		ProactiveExecutorService executor;
+		try {
+			executor = ProactiveExecutorService.newVirtualThreadPerTaskExecutor();
+		} catch (UnsupportedOperationException e) {
+			Assume.assumeNoException(e);
+			return;
+		}
+		
+		try {
+			assertEquals(Integer.valueOf(42), executor.submit(ANSWER).get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
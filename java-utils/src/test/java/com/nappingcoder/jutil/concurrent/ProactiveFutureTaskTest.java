@@ -21,8 +21,23 @@ package com.nappingcoder.jutil.concurrent;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 
 import org.junit.Test;
@@ -126,5 +141,331 @@ public class ProactiveFutureTaskTest {
 		
 		assertEquals(true, callbackCalled.get());
 	}
-
+	
+	@Test
+	public void testAddedCallbacksAreCalledInOrder() throws Exception {
+		
+		final List<String> calls = new CopyOnWriteArrayList<String>();
+		ProactiveFutureTask<Object> task = new ProactiveFutureTask<Object>(new Runnable() {
+			
+			@Override
+			public void run() {
+			}
+		}, null, recording(calls, "constructor"));
+		
+		task.addCallback(recording(calls, "first"));
+		task.addCallback(recording(calls, "second"));
+		assertTrue(calls.isEmpty());
+		
+		task.run();
+		assertEquals(Arrays.asList("constructor", "first", "second"), calls);
+		
+		// too late to wait, called right away on this thread
+		final AtomicReference<Thread> callbackThread = new AtomicReference<Thread>();
+		task.addCallback(new ProactiveFutureTask.Callback<Object>() {
+			
+			@Override
+			public void executionFinished(ProactiveFutureTask<Object> task) {
+				
+				callbackThread.set(Thread.currentThread());
+			}
+		});
+		assertSame(Thread.currentThread(), callbackThread.get());
+	}
+	
+	@Test
+	public void testFailingCallbackDoesNotStopOthers() throws Exception {
+		
+		final List<String> calls = new CopyOnWriteArrayList<String>();
+		ProactiveFutureTask<Object> task = new ProactiveFutureTask<Object>(new Runnable() {
+			
+			@Override
+			public void run() {
+			}
+		}, null);
+		
+		task.addCallback(new ProactiveFutureTask.Callback<Object>() {
+			
+			@Override
+			public void executionFinished(ProactiveFutureTask<Object> task) {
+				
+				throw new IllegalStateException("first");
+			}
+		});
+		task.addCallback(recording(calls, "second"));
+		
+		try {
+			task.run();
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("first", e.getMessage());
+		}
+		assertEquals(Arrays.asList("second"), calls);
+	}
+	
+	@Test
+	public void testCallbacksAddedWhileCompletingAreCalledOnce() throws Exception {
+		
+		for (int round = 0; round < 50; round++) {
+			final ProactiveFutureTask<Object> task = new ProactiveFutureTask<Object>(new Runnable() {
+				
+				@Override
+				public void run() {
+				}
+			}, null);
+			
+			final AtomicInteger calls = new AtomicInteger();
+			final ProactiveFutureTask.Callback<Object> callback = new ProactiveFutureTask.Callback<Object>() {
+				
+				@Override
+				public void executionFinished(ProactiveFutureTask<Object> task) {
+					
+					calls.incrementAndGet();
+				}
+			};
+			
+			final CountDownLatch start = new CountDownLatch(1);
+			Thread[] adders = new Thread[4];
+			for (int i = 0; i < adders.length; i++) {
+				adders[i] = new Thread(new Runnable() {
+					
+					@Override
+					public void run() {
+						
+						try {
+							start.await();
+						} catch (InterruptedException e) {
+							return;
+						}
+						for (int j = 0; j < 100; j++) {
+							task.addCallback(callback);
+						}
+					}
+				});
+				adders[i].start();
+			}
+			
+			start.countDown();
+			task.run();
+			for (Thread adder : adders) {
+				adder.join();
+			}
+			
+			assertEquals(400, calls.get());
+		}
+	}
+	
+	@Test
+	public void testCompletableFuture() throws Exception {
+		
+		ProactiveFutureTask<Integer> task = new ProactiveFutureTask<Integer>(new Callable<Integer>() {
+			
+			@Override
+			public Integer call() {
+				
+				return 20;
+			}
+		});
+		
+		CompletableFuture<Integer> future = task.toCompletableFuture();
+		assertSame(future, task.toCompletableFuture());
+		CompletableFuture<Integer> doubled = future.thenApply(new Function<Integer, Integer>() {
+			
+			@Override
+			public Integer apply(Integer value) {
+				
+				return value * 2;
+			}
+		});
+		assertFalse(doubled.isDone());
+		
+		task.run();
+		assertEquals(Integer.valueOf(40), doubled.getNow(null));
+		
+		// asked for after completion, already complete
+		ProactiveFutureTask<Integer> failed = new ProactiveFutureTask<Integer>(new Callable<Integer>() {
+			
+			@Override
+			public Integer call() {
+				
+				throw new IllegalStateException("failed");
+			}
+		});
+		failed.run();
+		try {
+			failed.toCompletableFuture().getNow(null);
+			fail();
+		} catch (CompletionException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+	}
+	
+	@Test
+	public void testCompletableFutureCancellation() throws Exception {
+		
+		ProactiveFutureTask<Integer> task = new ProactiveFutureTask<Integer>(new Callable<Integer>() {
+			
+			@Override
+			public Integer call() {
+				
+				return 1;
+			}
+		});
+		CompletableFuture<Integer> future = task.toCompletableFuture();
+		task.cancel(false);
+		assertTrue(future.isCancelled());
+		
+		task = new ProactiveFutureTask<Integer>(new Callable<Integer>() {
+			
+			@Override
+			public Integer call() {
+				
+				return 1;
+			}
+		});
+		future = task.toCompletableFuture();
+		assertTrue(future.cancel(true));
+		assertTrue(task.isCancelled());
+		
+		// a cancelled task does not run
+		task.run();
+		assertTrue(future.isCancelled());
+	}
+	
+	@Test
+	public void testCompletableFutureFanOut() throws Exception {
+		
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			List<CompletableFuture<Integer>> futures = new ArrayList<CompletableFuture<Integer>>();
+			for (int i = 0; i < 10000; i++) {
+				final int value = i;
+				ProactiveFutureTask<Integer> task = new ProactiveFutureTask<Integer>(new Callable<Integer>() {
+					
+					@Override
+					public Integer call() {
+						
+						return value;
+					}
+				});
+				futures.add(task.toCompletableFuture());
+				pool.execute(task);
+			}
+			
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+			
+			long sum = 0;
+			for (CompletableFuture<Integer> future : futures) {
+				sum += future.getNow(null);
+			}
+			assertEquals(10000L * 9999 / 2, sum);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+	
+	private ProactiveFutureTask.Callback<Object> recording(final List<String> calls, final String name) {
+		
+		return new ProactiveFutureTask.Callback<Object>() {
+			
+			@Override
+			public void executionFinished(ProactiveFutureTask<Object> task) {
+				
+				calls.add(name);
+			}
+		};
+	}
+	
+	@Test
+	public void testCallbackRunsOnCallbackExecutor() throws Exception {
+		
+		ExecutorService callbacks = Executors.newSingleThreadExecutor();
+		try {
+			final AtomicReference<Thread> callbackThread = new AtomicReference<Thread>();
+			final CountDownLatch called = new CountDownLatch(1);
+			ProactiveFutureTask.Callback<Integer> callback = new ProactiveFutureTask.Callback<Integer>() {
+				
+				@Override
+				public void executionFinished(ProactiveFutureTask<Integer> task) {
+					
+					callbackThread.set(Thread.currentThread());
+					called.countDown();
+				}
+			};
+			
+			ProactiveFutureTask<Integer> task = new ProactiveFutureTask<Integer>(new Callable<Integer>() {
+				
+				@Override
+				public Integer call() {
+					
+					return 42;
+				}
+			}, callback, callbacks);
+			task.run();
+			
+			assertTrue(called.await(5, TimeUnit.SECONDS));
+			assertNotSame(Thread.currentThread(), callbackThread.get());
+			assertEquals(Integer.valueOf(42), task.get());
+		} finally {
+			callbacks.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void testInlineCallbackSkipsCallbackExecutor() throws Exception {
+		
+		final AtomicReference<Thread> callbackThread = new AtomicReference<Thread>();
+		ProactiveFutureTask.Callback<Object> callback = new ProactiveFutureTask.InlineCallback<Object>() {
+			
+			@Override
+			public void executionFinished(ProactiveFutureTask<Object> task) {
+				
+				callbackThread.set(Thread.currentThread());
+			}
+		};
+		
+		Executor failing = new Executor() {
+			
+			@Override
+			public void execute(Runnable command) {
+				
+				fail();
+			}
+		};
+		
+		new ProactiveFutureTask<Object>(new Runnable() {
+			
+			@Override
+			public void run() {
+			}
+		}, null, callback, failing).run();
+		
+		assertSame(Thread.currentThread(), callbackThread.get());
+	}
+	
+	@Test
+	public void testRejectedCallbackRunsInline() throws Exception {
+		
+		ExecutorService callbacks = Executors.newSingleThreadExecutor();
+		callbacks.shutdown();
+		
+		final AtomicReference<Thread> callbackThread = new AtomicReference<Thread>();
+		ProactiveFutureTask.Callback<Object> callback = new ProactiveFutureTask.Callback<Object>() {
+			
+			@Override
+			public void executionFinished(ProactiveFutureTask<Object> task) {
+				
+				callbackThread.set(Thread.currentThread());
+			}
+		};
+		
+		new ProactiveFutureTask<Object>(new Runnable() {
+			
+			@Override
+			public void run() {
+			}
+		}, null, callback, callbacks).run();
+		
+		assertSame(Thread.currentThread(), callbackThread.get());
+	}
 }
@@ -0,0 +1,98 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.http;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class EncodedComponentCacheTest {
+	
+	@Test
+	public void testHitsAndMisses() throws Exception {
+		EncodedComponentCache cache = new EncodedComponentCache(100);
+		
+		assertEquals("caf%C3%A9", encode(cache, "café"));
+		assertEquals("caf%C3%A9", encode(cache, "café"));
+		assertEquals("%E4%BD%A0", encode(cache, "你"));
+		
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+		assertEquals(2, cache.size());
+	}
+	
+	@Test
+	public void testAsciiSkipsCache() throws Exception {
+		EncodedComponentCache cache = new EncodedComponentCache(100);
+		
+		assertEquals("users", encode(cache, "users"));
+		assertEquals("origin+store", encode(cache, "origin store"));
+		
+		assertEquals(0, cache.getHitCount());
+		assertEquals(0, cache.getMissCount());
+		assertEquals(0, cache.size());
+	}
+	
+	@Test
+	public void testBounded() throws Exception {
+		EncodedComponentCache cache = new EncodedComponentCache(4, 1);
+		
+		for (int i = 0; i < 10; i++) {
+			encode(cache, "é" + i);
+		}
+		assertEquals(4, cache.size());
+		
+		// most recently used entries are kept
+		encode(cache, "é9");
+		assertEquals(1, cache.getHitCount());
+		encode(cache, "é0");
+		assertEquals(11, cache.getMissCount());
+		
+		cache.clear();
+		assertEquals(0, cache.size());
+	}
+	
+	@Test
+	public void testSharedByBuilders() throws Exception {
+		EncodedComponentCache cache = new EncodedComponentCache(100);
+		
+		for (int i = 0; i < 3; i++) {
+			String url = HttpUrlBuilder.reusableHttpBuilder()
+					.encodingCache(cache)
+					.host("www.ea.com")
+					.addPathElement("café")
+					.addQuery("q", "你好")
+					.toString();
+			
+			assertEquals("http://www.ea.com/caf%C3%A9?q=%E4%BD%A0%E5%A5%BD", url);
+		}
+		
+		assertEquals(4, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+		assertEquals(2, cache.size());
+	}
+	
+	private String encode(EncodedComponentCache cache, String s) {
+		
+		StringBuilder buffer = new StringBuilder();
+		cache.encode(s, buffer);
+		return buffer.toString();
+	}
+}
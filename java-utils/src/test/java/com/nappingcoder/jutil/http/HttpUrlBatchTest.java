@@ -0,0 +1,102 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.http;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class HttpUrlBatchTest {
+	
+	@Test
+	public void testWithPathElement() throws Exception {
+		HttpUrlBuilder base = HttpUrlBuilder.httpBuilder().host("www.ea.com").addPathElement("shards").addQuery("type", "origin");
+		
+		List<String> urls = HttpUrlBatch.from(base).withPathElement(Arrays.asList("1", "a b", "é"));
+		
+		assertEquals(Arrays.asList(
+				"http://www.ea.com/shards/1?type=origin",
+				"http://www.ea.com/shards/a+b?type=origin",
+				"http://www.ea.com/shards/%C3%A9?type=origin"), urls);
+	}
+	
+	@Test
+	public void testWithPathElementNoPathNoQuery() throws Exception {
+		HttpUrlBuilder base = HttpUrlBuilder.httpBuilder().host("www.ea.com");
+		
+		assertEquals(Arrays.asList("http://www.ea.com/1"), HttpUrlBatch.from(base).withPathElement(Arrays.asList("1")));
+	}
+	
+	@Test
+	public void testWithQuery() throws Exception {
+		HttpUrlBuilder base = HttpUrlBuilder.httpBuilder().host("www.ea.com").port(8080).addPathElement("games");
+		HttpUrlBatch batch = HttpUrlBatch.from(base);
+		
+		assertEquals(Arrays.asList("http://www.ea.com:8080/games?shard+id=1", "http://www.ea.com:8080/games?shard+id="),
+				batch.withQuery("shard id", Arrays.asList("1", null)));
+		
+		base.addQuery("type", "origin");
+		assertEquals(Arrays.asList("http://www.ea.com:8080/games?type=origin&id=1"),
+				HttpUrlBatch.from(base).withQuery("id", Arrays.asList("1")));
+	}
+	
+	@Test
+	public void testSameAsBuilderInPool() throws Exception {
+		EncodedComponentCache cache = new EncodedComponentCache(16);
+		HttpUrlBuilder base = HttpUrlBuilder.httpSecureBuilder()
+				.encodingCache(cache)
+				.host("www.ea.com")
+				.addPathElement("shards")
+				.addQuery("q", "1");
+		
+		List<String> shards = new ArrayList<String>();
+		for (int i = 0; i < 5000; i++) {
+			shards.add("shard-é" + (i % 10) + "-" + i);
+		}
+		
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			List<String> urls = HttpUrlBatch.from(base).withPathElement(shards, pool);
+			
+			assertEquals(shards.size(), urls.size());
+			for (int i = 0; i < shards.size(); i++) {
+				String expected = HttpUrlBuilder.httpSecureBuilder()
+						.host("www.ea.com")
+						.addPathElement("shards")
+						.addPathElement(shards.get(i))
+						.addQuery("q", "1")
+						.toString();
+				assertEquals(expected, urls.get(i));
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	@Test(expected = HttpUrlBuilderException.class)
+	public void testNullPathElement() throws Exception {
+		HttpUrlBatch.from(HttpUrlBuilder.httpBuilder().host("www.ea.com")).withPathElement(Arrays.asList("1", null));
+	}
+}
@@ -19,9 +19,19 @@
  */
 package com.nappingcoder.jutil.http;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
 
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.Test;
@@ -184,4 +194,188 @@ public class HttpUrlBuilderTest {
 		
 		assertEquals("http://www.ea.com/games/need-for-%2Fspeed", builder.toString());
 	}
+	
+	@Test
+	public void testAddPathElementAfterToString() throws Exception {
+		HttpUrlBuilder builder = HttpUrlBuilder.httpBuilder().host("www.ea.com");
+		builder.addPathElement("games");
+		
+		assertEquals("http://www.ea.com/games", builder.toString());
+		
+		builder.addPathElement("need-for-speed");
+		assertEquals("http://www.ea.com/games/need-for-speed", builder.toString());
+	}
+	
+	@Test
+	public void testPort() throws Exception {
+		HttpUrlBuilder builder = HttpUrlBuilder.httpBuilder().host("www.ea.com").port(8080);
+		builder.addPathElement("games");
+		builder.addQuery("type", "origin");
+		
+		assertEquals("http://www.ea.com:8080/games?type=origin", builder.toString());
+	}
+	
+	@Test
+	public void testReset() throws Exception {
+		HttpUrlBuilder builder = HttpUrlBuilder.httpSecureBuilder().host("www.ea.com").port(8443);
+		builder.path("/games/nfs").addQuery("type", "origin");
+		
+		assertEquals("https://www.ea.com:8443/games/nfs?type=origin", builder.toString());
+		
+		builder.reset().host("www.google.com").addPathElement("search").addQuery("q", "nfs");
+		assertEquals("https://www.google.com/search?q=nfs", builder.toString());
+	}
+	
+	@Test
+	public void testReusableBuilder() throws Exception {
+		HttpUrlBuilder builder = HttpUrlBuilder.reusableHttpBuilder().host("www.ea.com");
+		builder.addPathElement("games").addQuery("type", "origin");
+		
+		assertEquals("http://www.ea.com/games?type=origin", builder.toString());
+		
+		HttpUrlBuilder again = HttpUrlBuilder.reusableHttpBuilder().host("www.google.com");
+		assertSame(builder, again);
+		assertEquals("http://www.google.com", again.toString());
+		
+		HttpUrlBuilder secure = HttpUrlBuilder.reusableHttpSecureBuilder().host("www.ea.com");
+		assertEquals("https://www.ea.com", secure.toString());
+		
+		// the next caller on this thread does not get the cache
+		HttpUrlBuilder.reusableHttpBuilder().encodingCache(new EncodedComponentCache(16));
+		assertNull(HttpUrlBuilder.reusableHttpBuilder().getEncodingCache());
+	}
+	
+	@Test
+	public void testUnicodeQueryAndPath() throws Exception {
+		HttpUrlBuilder builder = HttpUrlBuilder.httpBuilder().host("www.ea.com");
+		builder.addPathElement("caf\u00e9").addQuery("q", "\u4f60\u597d \ud83d\ude00");
+		
+		assertEquals("http://www.ea.com/caf%C3%A9?q=%E4%BD%A0%E5%A5%BD+%F0%9F%98%80", builder.toString());
+	}
+	
+	@Test
+	public void testNullQueryValue() throws Exception {
+		HttpUrlBuilder builder = HttpUrlBuilder.httpBuilder().host("www.ea.com");
+		builder.addQuery("type", null).addQuery("hello", "world");
+		
+		assertEquals("http://www.ea.com?type=&hello=world", builder.toString());
+	}
+	
+	@Test(expected = HttpUrlBuilderException.class)
+	public void testNullQueryName() throws Exception {
+		HttpUrlBuilder.httpBuilder().host("www.ea.com").addQuery(null, "origin");
+	}
+	
+	@Test
+	public void testAppendTo() throws Exception {
+		HttpUrlBuilder builder = HttpUrlBuilder.httpBuilder().host("www.ea.com");
+		builder.addPathElement("games").addQuery("type", "origin store");
+		
+		StringBuilder sb = new StringBuilder("GET ");
+		assertSame(sb, builder.appendTo(sb));
+		assertEquals("GET http://www.ea.com/games?type=origin+store", sb.toString());
+		
+		StringWriter writer = new StringWriter();
+		builder.appendTo(writer);
+		assertEquals("http://www.ea.com/games?type=origin+store", writer.toString());
+	}
+	
+	@Test
+	public void testWriteToByteBuffer() throws Exception {
+		HttpUrlBuilder builder = HttpUrlBuilder.httpBuilder().host("www.ea.com");
+		builder.addPathElement("caf\u00e9");
+		
+		ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+		buffer.put((byte) '>');
+		assertEquals(27, builder.writeTo(buffer));
+		
+		buffer.flip();
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		assertEquals(">http://www.ea.com/caf%C3%A9", new String(bytes, "US-ASCII"));
+	}
+	
+	@Test
+	public void testWriteToByteBufferTooSmall() throws Exception {
+		HttpUrlBuilder builder = HttpUrlBuilder.httpBuilder().host("www.ea.com");
+		
+		ByteBuffer buffer = ByteBuffer.allocate(8);
+		try {
+			builder.writeTo(buffer);
+			fail();
+		} catch (BufferOverflowException e) {
+			assertEquals(0, buffer.position());
+		}
+	}
+	
+	@Test
+	public void testWriteToOutputStream() throws Exception {
+		HttpUrlBuilder builder = HttpUrlBuilder.httpSecureBuilder().host("www.ea.com").port(8443);
+		builder.addQuery("q", "\u4f60");
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		builder.writeTo(out);
+		assertEquals("https://www.ea.com:8443?q=%E4%BD%A0", new String(out.toByteArray(), "US-ASCII"));
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void testWriteNonAsciiHost() throws Exception {
+		HttpUrlBuilder.httpBuilder().host("b\u00fccher.de").writeTo(new ByteArrayOutputStream());
+	}
+	
+	@Test
+	public void testAddQueries() throws Exception {
+		HttpUrlBuilder builder = HttpUrlBuilder.httpBuilder().host("www.ea.com");
+		
+		Map<String, List<String>> params = new LinkedHashMap<String, List<String>>();
+		params.put("game id", Arrays.asList("1", "2", null));
+		params.put("type", Arrays.asList("origin store"));
+		params.put("none", Collections.<String>emptyList());
+		
+		builder.addQuery("first", "yes").addQueries(params);
+		
+		assertEquals("http://www.ea.com?first=yes&game+id=1&game+id=2&game+id=&type=origin+store", builder.toString());
+	}
+	
+	@Test
+	public void testAddQueriesNullNameAddsNothing() throws Exception {
+		HttpUrlBuilder builder = HttpUrlBuilder.httpBuilder().host("www.ea.com").addQuery("first", "yes");
+		
+		Map<String, List<String>> params = new LinkedHashMap<String, List<String>>();
+		params.put("type", Arrays.asList("origin"));
+		params.put(null, Arrays.asList("oops"));
+		
+		try {
+			builder.addQueries(params);
+			fail();
+		} catch (HttpUrlBuilderException e) {
+			assertEquals("http://www.ea.com?first=yes", builder.toString());
+		}
+	}
+	
+	@Test
+	public void testAddQueryArrays() throws Exception {
+		HttpUrlBuilder builder = HttpUrlBuilder.httpBuilder().host("www.ea.com");
+		builder.addQuery(new String[] {"id", "id", "type"}, new String[] {"1", "2", null});
+		
+		assertEquals("http://www.ea.com?id=1&id=2&type=", builder.toString());
+	}
+	
+	@Test(expected = HttpUrlBuilderException.class)
+	public void testAddQueryArraysLengthMismatch() throws Exception {
+		HttpUrlBuilder.httpBuilder().host("www.ea.com").addQuery(new String[] {"id"}, new String[0]);
+	}
+	
+	@Test
+	public void testAddQueryParams() throws Exception {
+		QueryParams params = new QueryParams(1);
+		params.add("id", "1").addAll("id", Arrays.asList("2", "3")).add("q", "\u4f60");
+		
+		HttpUrlBuilder builder = HttpUrlBuilder.httpBuilder().host("www.ea.com");
+		assertEquals("http://www.ea.com?id=1&id=2&id=3&q=%E4%BD%A0", builder.addQuery(params).toString());
+		
+		params.clear().add("type", "origin");
+		assertEquals(1, params.size());
+		assertEquals("http://www.ea.com?type=origin", builder.reset().host("www.ea.com").addQuery(params).toString());
+	}
 }
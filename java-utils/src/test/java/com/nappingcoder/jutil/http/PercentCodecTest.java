@@ -0,0 +1,95 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.http;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.URLEncoder;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PercentCodecTest {
+	
+	@Test
+	public void testSafeStringIsCopied() throws Exception {
+		
+		assertEquals("need-for-speed_world.*", encode("need-for-speed_world.*"));
+		assertEquals("", encode(""));
+	}
+	
+	@Test
+	public void testAsciiEncoding() throws Exception {
+		
+		assertEquals("origin+store", encode("origin store"));
+		assertEquals("need-for-%2Fspeed", encode("need-for-/speed"));
+		assertEquals("a%3Db%26c%3F%25", encode("a=b&c?%"));
+	}
+	
+	@Test
+	public void testUnicodeEncoding() throws Exception {
+		
+		assertEquals("caf%C3%A9", encode("café"));
+		assertEquals("%E4%BD%A0%E5%A5%BD", encode("你好"));
+		// U+1F600, a surrogate pair
+		assertEquals("%F0%9F%98%80", encode("😀"));
+	}
+	
+	@Test
+	public void testLoneSurrogate() throws Exception {
+		
+		assertEquals("a%3Fb", encode("a\ud83db"));
+		assertEquals("a%3F", encode("a\ude00"));
+	}
+	
+	@Test
+	public void testSameAsUrlEncoder() throws Exception {
+		
+		Random random = new Random(42);
+		char[] alphabet = "aZ09-_.* /?&=%+~é你😀".toCharArray();
+		
+		for (int i = 0; i < 1000; i++) {
+			char[] chars = new char[random.nextInt(20)];
+			for (int j = 0; j < chars.length; j++) {
+				chars[j] = alphabet[random.nextInt(alphabet.length)];
+			}
+			String s = new String(chars);
+			
+			assertEquals(URLEncoder.encode(s, "UTF-8"), encode(s));
+		}
+	}
+	
+	@Test
+	public void testAppendsToBuffer() throws Exception {
+		
+		StringBuilder buffer = new StringBuilder("pre");
+		PercentCodec.encode("a b&c", buffer);
+		
+		assertEquals("pre" + encode("a b&c"), buffer.toString());
+		assertEquals("prea+b%26c", buffer.toString());
+	}
+	
+	private String encode(String s) {
+		
+		StringBuilder buffer = new StringBuilder();
+		PercentCodec.encode(s, buffer);
+		return buffer.toString();
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class UrlTemplateTest {
+	
+	@Test
+	public void testNoVariable() throws Exception {
+		UrlTemplate template = UrlTemplate.compile("http://www.ea.com/games/need for speed/?type=origin");
+		
+		assertEquals(0, template.getVariableNames().size());
+		assertEquals("http://www.ea.com/games/need+for+speed?type=origin", template.expand());
+	}
+	
+	@Test
+	public void testPathAndQueryVariables() throws Exception {
+		UrlTemplate template = UrlTemplate.compile("https://api.host:8443/v1/users/{id}/orders?limit={n}");
+		
+		assertEquals(Arrays.asList("id", "n"), template.getVariableNames());
+		assertEquals("https://api.host:8443/v1/users/42/orders?limit=10", template.expand(42, 10));
+		assertEquals("https://api.host:8443/v1/users/a%2Fb+c/orders?limit=%C3%A9", template.expand("a/b c", "é"));
+	}
+	
+	@Test
+	public void testExpandWithMap() throws Exception {
+		UrlTemplate template = UrlTemplate.compile("http://www.ea.com/{game}/v{version}/{game}?{name}={value}&sort");
+		
+		Map<String, Object> variables = new HashMap<String, Object>();
+		variables.put("game", "nfs");
+		variables.put("version", 2);
+		variables.put("name", "type");
+		variables.put("value", "origin store");
+		
+		assertEquals(Arrays.asList("game", "version", "name", "value"), template.getVariableNames());
+		assertEquals("http://www.ea.com/nfs/v2/nfs?type=origin+store&sort=", template.expand(variables));
+	}
+	
+	@Test
+	public void testSameAsBuilder() throws Exception {
+		UrlTemplate template = UrlTemplate.compile("http://www.ea.com:8080//games/{name}/?type={type}");
+		
+		String expected = HttpUrlBuilder.httpBuilder()
+				.host("www.ea.com")
+				.port(8080)
+				.path("/games/need for/speed")
+				.addQuery("type", "origin & co")
+				.toString();
+		
+		assertEquals(expected.replace("for/speed", "for%2Fspeed"), template.expand("need for/speed", "origin & co"));
+	}
+	
+	@Test(expected = HttpUrlBuilderException.class)
+	public void testMissingVariable() throws Exception {
+		UrlTemplate.compile("http://www.ea.com/{game}").expand(new HashMap<String, Object>());
+	}
+	
+	@Test(expected = HttpUrlBuilderException.class)
+	public void testWrongNumberOfValues() throws Exception {
+		UrlTemplate.compile("http://www.ea.com/{game}").expand("nfs", "again");
+	}
+	
+	@Test
+	public void testNullValues() throws Exception {
+		try {
+			UrlTemplate.compile("http://www.ea.com/{game}").expand((Object[]) null);
+			fail();
+		} catch (HttpUrlBuilderException e) {
+			assertEquals("given values are null", e.getMessage());
+		}
+	}
+	
+	@Test
+	public void testSeparatorInVariableName() throws Exception {
+		try {
+			UrlTemplate.compile("http://www.ea.com/{game/mode}");
+			fail();
+		} catch (HttpUrlBuilderException e) {
+			assertEquals("variable {game/mode} contains / in http://www.ea.com/{game/mode}", e.getMessage());
+		}
+		
+		try {
+			UrlTemplate.compile("http://www.ea.com/games?{a=b}=1");
+			fail();
+		} catch (HttpUrlBuilderException e) {
+			assertEquals("variable {a=b} contains = in http://www.ea.com/games?{a=b}=1", e.getMessage());
+		}
+	}
+	
+	@Test(expected = HttpUrlBuilderException.class)
+	public void testVariableInHost() throws Exception {
+		UrlTemplate.compile("http://{host}/games");
+	}
+	
+	@Test(expected = HttpUrlBuilderException.class)
+	public void testUnmatchedBrace() throws Exception {
+		UrlTemplate.compile("http://www.ea.com/{game");
+	}
+	
+	@Test(expected = HttpUrlBuilderException.class)
+	public void testInvalidPort() throws Exception {
+		UrlTemplate.compile("http://www.ea.com:99999/games");
+	}
+	
+	@Test(expected = HttpUrlBuilderException.class)
+	public void testUnsupportedProtocol() throws Exception {
+		UrlTemplate.compile("ftp://www.ea.com/games");
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class ConcurrentOrderedPropertiesTest {
+	
+	@Test
+	public void testLoadKeepsOrder() throws Exception {
+		
+		ConcurrentOrderedProperties prop = new ConcurrentOrderedProperties();
+		prop.load(new ByteArrayInputStream("prop3=again\nprop1=hello\nprop2=world".getBytes()));
+		
+		assertEquals(Arrays.asList("prop3", "prop1", "prop2"), new ArrayList<String>(prop.stringPropertyNames()));
+		assertEquals(Arrays.asList((Object) "again", "hello", "world"), new ArrayList<Object>(prop.values()));
+		assertEquals("hello", prop.getProperty("prop1"));
+		assertEquals(3, prop.size());
+		
+		Enumeration<?> names = prop.propertyNames();
+		assertEquals("prop3", names.nextElement());
+	}
+	
+	@Test
+	public void testWritesArePublished() throws Exception {
+		
+		ConcurrentOrderedProperties prop = new ConcurrentOrderedProperties();
+		prop.setProperty("prop1", "hello");
+		prop.setProperty("prop2", "world");
+		prop.setProperty("prop1", "again");
+		
+		assertEquals("again", prop.getProperty("prop1"));
+		assertEquals(Arrays.asList("prop1", "prop2"), new ArrayList<String>(prop.stringPropertyNames()));
+		
+		prop.remove("prop1");
+		assertNull(prop.getProperty("prop1"));
+		assertFalse(prop.containsKey("prop1"));
+		assertEquals(Arrays.asList("prop2"), new ArrayList<String>(prop.stringPropertyNames()));
+		
+		Map<String, String> more = new LinkedHashMap<String, String>();
+		more.put("prop4", "four");
+		more.put("prop3", "three");
+		prop.putAll(more);
+		assertEquals(Arrays.asList("prop2", "prop4", "prop3"), new ArrayList<String>(prop.stringPropertyNames()));
+		
+		prop.clear();
+		assertTrue(prop.isEmpty());
+		assertTrue(prop.stringPropertyNames().isEmpty());
+	}
+	
+	@Test
+	public void testDefaults() throws Exception {
+		
+		final Properties fallback = new Properties();
+		fallback.setProperty("prop1", "default");
+		
+		@SuppressWarnings("serial")
+		ConcurrentOrderedProperties prop = new ConcurrentOrderedProperties() {
+			{
+				defaults = fallback;
+			}
+		};
+		
+		assertEquals("default", prop.getProperty("prop1"));
+		assertEquals("other", prop.getProperty("prop2", "other"));
+	}
+	
+	@Test
+	public void testResolvedPropertyKeepsUnrelatedResults() throws Exception {
+		
+		ConcurrentOrderedProperties prop = new ConcurrentOrderedProperties();
+		prop.setProperty("a", "1");
+		prop.setProperty("b", "${a}");
+		prop.setProperty("c", "2");
+		prop.setProperty("d", "${c}");
+		prop.setProperty("e", "${missing}");
+		
+		String b = prop.getResolvedProperty("b");
+		String d = prop.getResolvedProperty("d");
+		assertEquals("${missing}", prop.getResolvedProperty("e"));
+		
+		// each write publishes a new snapshot, which keeps what it did not touch
+		prop.setProperty("c", "3");
+		prop.setProperty("other", "x");
+		assertTrue(b == prop.getResolvedProperty("b"));
+		assertEquals("3", prop.getResolvedProperty("d"));
+		assertFalse(d.equals(prop.getResolvedProperty("d")));
+		
+		// a batch of writes too, and a name that was missing is picked up
+		prop.load(new ByteArrayInputStream("missing=found\na=4".getBytes()));
+		assertEquals("found", prop.getResolvedProperty("e"));
+		assertEquals("4", prop.getResolvedProperty("b"));
+	}
+	
+	@Test
+	public void testIterationIsNotAffectedByWrites() throws Exception {
+		
+		ConcurrentOrderedProperties prop = new ConcurrentOrderedProperties();
+		prop.setProperty("prop1", "hello");
+		prop.setProperty("prop2", "world");
+		
+		Iterator<String> names = prop.stringPropertyNames().iterator();
+		assertEquals("prop1", names.next());
+		
+		prop.setProperty("prop3", "again");
+		prop.remove("prop2");
+		
+		assertEquals("prop2", names.next());
+		assertFalse(names.hasNext());
+	}
+	
+	@Test
+	public void testReadersSeeWholeWrites() throws Exception {
+		
+		final ConcurrentOrderedProperties prop = new ConcurrentOrderedProperties();
+		final AtomicBoolean done = new AtomicBoolean();
+		final AtomicReference<String> failure = new AtomicReference<String>();
+		
+		List<Thread> readers = new ArrayList<Thread>();
+		for (int i = 0; i < 4; i++) {
+			Thread reader = new Thread() {
+				
+				@Override
+				public void run() {
+					
+					while (!done.get()) {
+						// each write adds one name, so names must always be 0..n-1 in order
+						int expected = 0;
+						for (String name : prop.stringPropertyNames()) {
+							if (!name.equals("key" + expected++)) {
+								failure.set("unexpected " + name);
+							}
+						}
+					}
+				}
+			};
+			reader.start();
+			readers.add(reader);
+		}
+		
+		for (int i = 0; i < 2000; i++) {
+			prop.setProperty("key" + i, "value" + i);
+		}
+		
+		done.set(true);
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		
+		assertNull(failure.get());
+		assertEquals(2000, prop.size());
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class LayeredPropertiesTest {
+	
+	@Test
+	public void testHigherLayersWin() {
+		
+		LayeredProperties prop = new LayeredProperties("defaults", "environment", "override");
+		prop.setProperty("defaults", "host", "localhost");
+		prop.setProperty("defaults", "port", "80");
+		prop.setProperty("environment", "port", "8080");
+		prop.setProperty("override", "debug", "true");
+		prop.setProperty("defaults", "user", "guest");
+		
+		assertEquals("localhost", prop.getProperty("host"));
+		assertEquals("8080", prop.getProperty("port"));
+		assertEquals(Arrays.asList("host", "port", "debug", "user"), Collections.list(prop.propertyNames()));
+		assertEquals(4, prop.size());
+		
+		// the lower value shows through once the higher one is gone
+		assertEquals("8080", prop.removeProperty("environment", "port"));
+		assertEquals("80", prop.getProperty("port"));
+		assertNull(prop.removeProperty("environment", "port"));
+		
+		prop.removeProperty("defaults", "user");
+		assertFalse(prop.containsKey("user"));
+		assertEquals(Arrays.asList("host", "port", "debug"), Collections.list(prop.propertyNames()));
+		
+		assertEquals(Arrays.asList("host", "port"), Collections.list(prop.getLayer("defaults").propertyNames()));
+	}
+	
+	@Test
+	public void testSetLayer() {
+		
+		LayeredProperties prop = new LayeredProperties("defaults", "tenant");
+		prop.setProperty("defaults", "a", "1");
+		prop.setProperty("defaults", "b", "2");
+		prop.setProperty("tenant", "a", "10");
+		prop.setProperty("tenant", "c", "30");
+		
+		Map<String, String> tenant = new LinkedHashMap<String, String>();
+		tenant.put("b", "20");
+		tenant.put("d", "40");
+		prop.setLayer("tenant", tenant);
+		
+		assertEquals("1", prop.getProperty("a"));
+		assertEquals("20", prop.getProperty("b"));
+		assertNull(prop.getProperty("c"));
+		assertEquals("40", prop.getProperty("d"));
+		assertEquals(Arrays.asList("a", "b", "d"), Collections.list(prop.propertyNames()));
+		assertEquals(Arrays.asList("b", "d"), Collections.list(prop.getLayer("tenant").propertyNames()));
+		
+		try {
+			prop.setLayer("missing", tenant);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+	
+	@Test
+	public void testPropertiesMethodsUseTopLayer() throws Exception {
+		
+		LayeredProperties prop = new LayeredProperties("defaults", "override");
+		prop.setProperty("defaults", "name", "default");
+		prop.load(new ByteArrayInputStream("name=loaded\nother=x".getBytes()));
+		
+		assertEquals("loaded", prop.getProperty("name"));
+		assertEquals("loaded", prop.getLayer("override").getProperty("name"));
+		
+		assertEquals("loaded", prop.remove("name"));
+		assertEquals("default", prop.getProperty("name"));
+		
+		prop.setProperty("name", "set");
+		assertEquals("set", prop.getProperty("name"));
+		assertEquals("default", prop.getLayer("defaults").getProperty("name"));
+		
+		try {
+			prop.keySet().remove("name");
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		try {
+			prop.entrySet().iterator().next().setValue("x");
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		
+		prop.clear();
+		assertTrue(prop.isEmpty());
+		assertTrue(prop.getLayer("defaults").isEmpty());
+	}
+	
+	@Test
+	public void testCloneAndSerialize() throws Exception {
+		
+		LayeredProperties prop = new LayeredProperties("defaults", "override");
+		prop.setProperty("defaults", "a", "1");
+		prop.setProperty("override", "a", "2");
+		
+		LayeredProperties clone = (LayeredProperties) prop.clone();
+		clone.removeProperty("override", "a");
+		assertEquals("1", clone.getProperty("a"));
+		assertEquals("2", prop.getProperty("a"));
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(prop);
+		out.close();
+		
+		LayeredProperties copy = (LayeredProperties) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		assertEquals("2", copy.getProperty("a"));
+		assertEquals(Arrays.asList("defaults", "override"), new ArrayList<String>(copy.getLayerNames()));
+		copy.removeProperty("override", "a");
+		assertEquals("1", copy.getProperty("a"));
+	}
+}
@@ -0,0 +1,257 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+public class OrderedPropertiesSnapshotTest {
+	
+	@Test
+	public void testRoundTrip() throws Exception {
+		
+		OrderedProperties prop = new OrderedProperties();
+		prop.setProperty("prop3", "again");
+		prop.setProperty("prop1", "hello");
+		prop.setProperty("café", "crème");
+		prop.setProperty("中文", "😀 unicode");
+		prop.setProperty("empty", "");
+		
+		File file = makeFile();
+		prop.storeSnapshot(file);
+		OrderedPropertiesSnapshot snapshot = OrderedPropertiesSnapshot.open(file);
+		
+		assertEquals(5, snapshot.size());
+		assertEquals("hello", snapshot.getProperty("prop1"));
+		assertEquals("crème", snapshot.getProperty("café"));
+		assertEquals("😀 unicode", snapshot.getProperty("中文"));
+		assertEquals("", snapshot.getProperty("empty"));
+		assertNull(snapshot.getProperty("missing"));
+		assertEquals("default", snapshot.getProperty("missing", "default"));
+		assertTrue(snapshot.containsKey("prop3"));
+		assertFalse(snapshot.containsKey("prop"));
+		
+		assertEquals(Arrays.asList("prop3", "prop1", "café", "中文", "empty"), snapshot.propertyNames());
+		assertEquals("again", snapshot.getValue(0));
+		
+		OrderedProperties copy = snapshot.toProperties();
+		assertEquals(prop, copy);
+		assertEquals(new ArrayList<String>(prop.stringPropertyNames()), new ArrayList<String>(copy.stringPropertyNames()));
+	}
+	
+	@Test
+	public void testManyEntriesAndCollisions() throws Exception {
+		
+		OrderedProperties prop = new OrderedProperties();
+		for (int i = 0; i < 10000; i++) {
+			prop.setProperty("key" + i, "value" + i);
+		}
+		// "Aa" and "BB" have the same hash code
+		prop.setProperty("Aa", "first");
+		prop.setProperty("BB", "second");
+		
+		File file = makeFile();
+		prop.storeSnapshot(file);
+		OrderedPropertiesSnapshot snapshot = OrderedPropertiesSnapshot.open(file);
+		
+		assertEquals(10002, snapshot.size());
+		for (int i = 0; i < 10000; i++) {
+			assertEquals("value" + i, snapshot.getProperty("key" + i));
+		}
+		assertEquals("first", snapshot.getProperty("Aa"));
+		assertEquals("second", snapshot.getProperty("BB"));
+		assertEquals("key9999", snapshot.getKey(9999));
+	}
+	
+	@Test
+	public void testEmpty() throws Exception {
+		
+		File file = makeFile();
+		new OrderedProperties().storeSnapshot(file);
+		
+		OrderedPropertiesSnapshot snapshot = OrderedPropertiesSnapshot.open(file);
+		assertEquals(0, snapshot.size());
+		assertNull(snapshot.getProperty("key"));
+		assertTrue(snapshot.toProperties().isEmpty());
+	}
+	
+	@Test
+	public void testLoadIntoConcurrentProperties() throws Exception {
+		
+		OrderedProperties prop = new OrderedProperties();
+		prop.setProperty("prop2", "world");
+		prop.setProperty("prop1", "hello");
+		
+		File file = makeFile();
+		prop.storeSnapshot(file);
+		
+		ConcurrentOrderedProperties concurrent = new ConcurrentOrderedProperties();
+		concurrent.setProperty("prop0", "first");
+		concurrent.load(OrderedPropertiesSnapshot.open(file));
+		
+		assertEquals(Arrays.asList("prop0", "prop2", "prop1"), new ArrayList<String>(concurrent.stringPropertyNames()));
+		assertEquals("hello", concurrent.getProperty("prop1"));
+	}
+	
+	@Test
+	public void testStoreLeavesNoTemporaryFiles() throws Exception {
+		
+		OrderedProperties prop = new OrderedProperties();
+		prop.setProperty("prop1", "hello");
+		
+		File dir = Files.createTempDirectory("snapshots").toFile();
+		File file = new File(dir, "ordered.snapshot");
+		try {
+			prop.storeSnapshot(file);
+			prop.storeSnapshot(file);
+			assertEquals(Arrays.asList("ordered.snapshot"), Arrays.asList(dir.list()));
+			
+			// a directory that is not empty cannot be replaced, the move fails
+			assertTrue(file.delete());
+			assertTrue(new File(file, "inside").mkdirs());
+			try {
+				prop.storeSnapshot(file);
+				fail();
+			} catch (IOException e) {
+				// expected
+			}
+			assertEquals(Arrays.asList("ordered.snapshot"), Arrays.asList(dir.list()));
+		} finally {
+			new File(file, "inside").delete();
+			file.delete();
+			dir.delete();
+		}
+	}
+	
+	@Test
+	public void testStoreUsesDefaultPermissions() throws Exception {
+		
+		File dir = Files.createTempDirectory("snapshots").toFile();
+		File file = new File(dir, "ordered.snapshot");
+		File plain = new File(dir, "plain");
+		try {
+			Assume.assumeTrue(Files.getFileStore(dir.toPath()).supportsFileAttributeView(PosixFileAttributeView.class));
+			
+			new FileOutputStream(plain).close();
+			new OrderedProperties().storeSnapshot(file);
+			
+			assertEquals(Files.getPosixFilePermissions(plain.toPath()), Files.getPosixFilePermissions(file.toPath()));
+		} finally {
+			plain.delete();
+			file.delete();
+			dir.delete();
+		}
+	}
+	
+	@Test
+	public void testCorruptIndex() throws Exception {
+		
+		// sound: the entry is found, and a missing key stops at the empty slot
+		OrderedPropertiesSnapshot snapshot = OrderedPropertiesSnapshot.open(makeSnapshot(1, 0, 28));
+		assertEquals("b", snapshot.getProperty("a"));
+		assertNull(snapshot.getProperty("missing"));
+		
+		// no empty slot to stop at
+		assertCorrupt(OrderedPropertiesSnapshot.open(makeSnapshot(1, 1, 28)), "missing");
+		
+		// a slot past the entries
+		assertCorrupt(OrderedPropertiesSnapshot.open(makeSnapshot(5, 5, 28)), "a");
+		
+		// an entry outside the file
+		assertCorrupt(OrderedPropertiesSnapshot.open(makeSnapshot(1, 0, 1000)), "a");
+		assertCorrupt(OrderedPropertiesSnapshot.open(makeSnapshot(1, 0, 4)), "a");
+	}
+	
+	@Test(expected = IOException.class)
+	public void testNotASnapshot() throws Exception {
+		
+		File file = makeFile();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write("prop1=hello\nprop2=world\n".getBytes("ISO-8859-1"));
+		} finally {
+			out.close();
+		}
+		
+		OrderedPropertiesSnapshot.open(file);
+	}
+	
+	private void assertCorrupt(OrderedPropertiesSnapshot snapshot, String key) {
+		
+		try {
+			snapshot.getProperty(key);
+			fail();
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage().contains("corrupt"));
+		}
+	}
+	
+	/**
+	 * A snapshot holding a=b, with the given index slots and entry offset;
+	 * the sound values are 1, 0 and 28.
+	 */
+	private File makeSnapshot(int home, int other, int offset) throws IOException {
+		
+		File file = makeFile();
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		try {
+			out.writeInt(0x4F505331);
+			out.writeInt(1);
+			out.writeInt(2);
+			
+			// the hash of "a" is odd, so its home is the second of two slots
+			out.writeInt(other);
+			out.writeInt(home);
+			out.writeInt(offset);
+			out.writeInt("a".hashCode());
+			out.writeInt(2);
+			out.writeBytes("a");
+			out.writeInt(2);
+			out.writeBytes("b");
+		} finally {
+			out.close();
+		}
+		
+		return file;
+	}
+	
+	private File makeFile() throws IOException {
+		
+		File file = File.createTempFile("ordered", ".snapshot");
+		file.deleteOnExit();
+		
+		return file;
+	}
+}
@@ -20,13 +20,35 @@
 package com.nappingcoder.jutil.properties;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 
 
@@ -36,7 +58,7 @@ import com.nappingcoder.jutil.properties.OrderedProperties;
 
 
 public class OrderedPropertiesTest {
-
+	
 	@Test
 	public void testSingleElementProperty() throws Exception {
 		
@@ -136,6 +158,609 @@ public class OrderedPropertiesTest {
 		assertEquals("again", valuesItr.next());
 	}
 	
+	@Test
+	public void testPutKeepsFirstPosition() throws Exception {
+		
+		OrderedProperties prop = new OrderedProperties();
+		prop.load(makeStream("prop1=hello\nprop2=world\nprop1=again"));
+		
+		assertEquals(2, prop.size());
+		assertEquals("again", prop.getProperty("prop1"));
+		Iterator<String> namesItr = prop.stringPropertyNames().iterator();
+		assertEquals("prop1", namesItr.next());
+		assertEquals("prop2", namesItr.next());
+	}
+	
+	@Test
+	public void testManyPutsAndRemovals() throws Exception {
+		
+		OrderedProperties prop = new OrderedProperties();
+		Map<String, String> expected = new LinkedHashMap<String, String>();
+		
+		// enough removals in between to make the store compact and grow
+		for (int i = 0; i < 10000; i++) {
+			prop.setProperty("key" + i, "value" + i);
+			expected.put("key" + i, "value" + i);
+			if (i % 3 == 0) {
+				prop.remove("key" + (i / 2));
+				expected.remove("key" + (i / 2));
+			}
+		}
+		
+		assertEquals(expected.size(), prop.size());
+		assertEquals(new ArrayList<String>(expected.keySet()), new ArrayList<String>(prop.stringPropertyNames()));
+		assertEquals(new ArrayList<Object>(expected.values()), new ArrayList<Object>(prop.values()));
+		for (Map.Entry<String, String> e : expected.entrySet()) {
+			assertEquals(e.getValue(), prop.getProperty(e.getKey()));
+		}
+		assertNull(prop.getProperty("key0"));
+	}
+	
+	@Test
+	public void testEntrySetIsOrderedAndLive() throws Exception {
+		
+		OrderedProperties prop = new OrderedProperties();
+		prop.load(makeStream("prop1=hello\nprop2=world\nprop3=again"));
+		
+		Iterator<Map.Entry<Object, Object>> entries = prop.entrySet().iterator();
+		Map.Entry<Object, Object> first = entries.next();
+		assertEquals("prop1", first.getKey());
+		first.setValue("changed");
+		assertEquals("prop2", entries.next().getKey());
+		entries.remove();
+		assertEquals("prop3", entries.next().getKey());
+		assertFalse(entries.hasNext());
+		
+		assertEquals("changed", prop.getProperty("prop1"));
+		assertFalse(prop.containsKey("prop2"));
+		assertEquals("{prop1=changed, prop3=again}", prop.toString());
+	}
+	
+	@Test
+	public void testMapMethods() throws Exception {
+		
+		OrderedProperties prop = new OrderedProperties();
+		prop.load(makeStream("prop1=hello\nprop2=world"));
+		
+		Map<Object, Object> same = new HashMap<Object, Object>();
+		same.put("prop2", "world");
+		same.put("prop1", "hello");
+		assertEquals(same, prop);
+		assertEquals(prop, same);
+		assertEquals(same.hashCode(), prop.hashCode());
+		
+		assertEquals("hello", prop.putIfAbsent("prop1", "other"));
+		assertEquals("world!", prop.merge("prop2", "!", (a, b) -> a.toString() + b));
+		assertNull(prop.compute("prop1", (k, v) -> null));
+		assertEquals("new", prop.computeIfAbsent("prop3", k -> "new"));
+		assertEquals(Arrays.asList("prop2", "prop3"), new ArrayList<String>(prop.stringPropertyNames()));
+	}
+	
+	@Test
+	public void testCloneIsIndependent() throws Exception {
+		
+		OrderedProperties prop = new OrderedProperties();
+		prop.load(makeStream("prop1=hello\nprop2=world"));
+		
+		OrderedProperties clone = (OrderedProperties) prop.clone();
+		clone.setProperty("prop3", "again");
+		prop.remove("prop1");
+		
+		assertEquals(Arrays.asList("prop1", "prop2", "prop3"), new ArrayList<String>(clone.stringPropertyNames()));
+		assertEquals(Arrays.asList("prop2"), new ArrayList<String>(prop.stringPropertyNames()));
+	}
+	
+	@Test
+	public void testSerializationKeepsOrder() throws Exception {
+		
+		OrderedProperties prop = new OrderedProperties();
+		prop.load(makeStream("prop3=again\nprop1=hello\nprop2=world"));
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(prop);
+		out.close();
+		
+		OrderedProperties copy = (OrderedProperties) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		assertEquals(Arrays.asList("prop3", "prop1", "prop2"), new ArrayList<String>(copy.stringPropertyNames()));
+		assertEquals("hello", copy.getProperty("prop1"));
+	}
+	
+	@Test
+	public void testStoreIsOrdered() throws Exception {
+		
+		OrderedProperties prop = new OrderedProperties();
+		prop.load(makeStream("prop3=again\nprop1=hello\nprop2=world"));
+		
+		StringWriter out = new StringWriter();
+		prop.store(out, null);
+		
+		String stored = out.toString();
+		assertTrue(stored.indexOf("prop3=again") < stored.indexOf("prop1=hello"));
+		assertTrue(stored.indexOf("prop1=hello") < stored.indexOf("prop2=world"));
+	}
+	
+	@Test
+	public void testLoadFileMatchesProperties() throws Exception {
+		
+		String content = "# comment \\\n"
+				+ "prop3 = again\r\n"
+				+ "  ! another comment\n"
+				+ "\n"
+				+ "prop1:hello \\\n"
+				+ "    world\\\r\n"
+				+ "\tand more\n"
+				+ "prop2  value with spaces  \n"
+				+ "key\\ with\\=escapes\\:=tab\\there\\nnewline \\u00e9\\u4E2D\n"
+				+ "empty\n"
+				+ "sep=:=value\n"
+				+ "trailing\\\\\n"
+				+ "last=no line break";
+		
+		OrderedProperties prop = new OrderedProperties();
+		prop.load(makeFile(content.getBytes("ISO-8859-1")));
+		
+		Properties expected = new Properties();
+		expected.load(new StringReader(content));
+		
+		assertEquals(expected, prop);
+		assertEquals(Arrays.asList("prop3", "prop1", "prop2", "key with=escapes:", "empty", "sep", "trailing\\", "last"),
+				new ArrayList<String>(prop.stringPropertyNames()));
+	}
+	
+	@Test
+	public void testLoadFileContinuedLines() throws Exception {
+		
+		String[] contents = {
+				"\\\n#c",
+				"\\\n",
+				"\\\r",
+				"\\\r\n",
+				"a=1\n\\\n!c\nb=2",
+				"a=1\\\n",
+				"a=1\\\n   ",
+				"\\\n\\\n#c\\\nd"};
+		
+		for (String content : contents) {
+			OrderedProperties prop = new OrderedProperties();
+			prop.load(makeFile(content.getBytes("ISO-8859-1")));
+			
+			Properties expected = new Properties();
+			expected.load(new StringReader(content));
+			
+			assertEquals(content, expected, prop);
+		}
+	}
+	
+	@Test
+	public void testLoadFileCharsets() throws Exception {
+		
+		String content = "café=中文 😀\nplain=ok";
+		
+		OrderedProperties utf8 = new OrderedProperties();
+		utf8.load(makeFile(content.getBytes("UTF-8")), StandardCharsets.UTF_8);
+		assertEquals("中文 😀", utf8.getProperty("café"));
+		assertEquals("ok", utf8.getProperty("plain"));
+		
+		OrderedProperties latin1 = new OrderedProperties();
+		latin1.load(makeFile("café=crème".getBytes("ISO-8859-1")));
+		assertEquals("crème", latin1.getProperty("café"));
+		
+		OrderedProperties utf16 = new OrderedProperties();
+		utf16.load(makeFile(content.getBytes("UTF-16")), StandardCharsets.UTF_16);
+		assertEquals(utf8, utf16);
+		
+		// a truncated sequence is replaced, the rest is still read
+		OrderedProperties malformed = new OrderedProperties();
+		malformed.load(makeFile(new byte[] {'a', '=', (byte) 0xE4, (byte) 0xB8, '\n', 'b', '=', 'c'}), StandardCharsets.UTF_8);
+		assertEquals("�", malformed.getProperty("a"));
+		assertEquals("c", malformed.getProperty("b"));
+	}
+	
+	@Test
+	public void testLoadFileLarge() throws Exception {
+		
+		StringBuilder content = new StringBuilder();
+		for (int i = 0; i < 50000; i++) {
+			content.append("key").append(i).append('=').append("value").append(i).append('\n');
+		}
+		
+		OrderedProperties prop = new OrderedProperties();
+		prop.setProperty("existing", "first");
+		prop.load(makeFile(content.toString().getBytes("ISO-8859-1")));
+		
+		assertEquals(50001, prop.size());
+		Iterator<String> namesItr = prop.stringPropertyNames().iterator();
+		assertEquals("existing", namesItr.next());
+		assertEquals("key0", namesItr.next());
+		assertEquals("value49999", prop.getProperty("key49999"));
+	}
+	
+	@Test
+	public void testLoadFileLargeUtf8() throws Exception {
+		
+		// multi-byte characters and continuations end up across the 64KB chunks
+		StringBuilder content = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			content.append("clé").append(i).append(" = 中文 \\\n  😀").append(i).append("\r\n");
+		}
+		
+		OrderedProperties prop = new OrderedProperties();
+		prop.load(makeFile(content.toString().getBytes("UTF-8")), StandardCharsets.UTF_8);
+		
+		Properties expected = new Properties();
+		expected.load(new StringReader(content.toString()));
+		
+		assertEquals(20000, prop.size());
+		assertEquals(expected, prop);
+		assertEquals("中文 😀19999", prop.getProperty("clé19999"));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testLoadFileMalformedUnicodeEscape() throws Exception {
+		
+		new OrderedProperties().load(makeFile("key=\\u00g1".getBytes("ISO-8859-1")));
+	}
+	
+	@Test
+	public void testStoreMatchesProperties() throws Exception {
+		
+		OrderedProperties prop = new OrderedProperties();
+		Properties expected = new Properties();
+		String[][] entries = {
+				{"plain", "value"},
+				{" key with spaces ", " leading and trailing "},
+				{"sep=ar:at#or!s", "a=b:c#d!e"},
+				{"back\\slash", "tab\tnewline\nreturn\rfeed\f"},
+				{"unicode", "café 中文 😀 \u0001"}};
+		for (String[] e : entries) {
+			prop.setProperty(e[0], e[1]);
+			expected.setProperty(e[0], e[1]);
+		}
+		
+		String comments = "first line\nsecond line\r\n# already a comment\rcafé 中文";
+		
+		StringWriter writer = new StringWriter();
+		prop.store(writer, comments);
+		StringWriter expectedWriter = new StringWriter();
+		expected.store(expectedWriter, comments);
+		assertEquals(sortedLines(expectedWriter.toString()), sortedLines(writer.toString()));
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		prop.store(out, comments);
+		ByteArrayOutputStream expectedOut = new ByteArrayOutputStream();
+		expected.store(expectedOut, comments);
+		assertEquals(sortedLines(expectedOut.toString("ISO-8859-1")), sortedLines(out.toString("ISO-8859-1")));
+		
+		OrderedProperties reloaded = new OrderedProperties();
+		reloaded.load(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(prop, reloaded);
+		assertEquals(new ArrayList<String>(prop.stringPropertyNames()), new ArrayList<String>(reloaded.stringPropertyNames()));
+	}
+	
+	@Test
+	public void testStoreToChannel() throws Exception {
+		
+		OrderedProperties prop = new OrderedProperties();
+		for (int i = 0; i < 5000; i++) {
+			prop.setProperty("key" + i, "value " + i);
+		}
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		prop.store(Channels.newChannel(out), null);
+		
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		prop.store(expected, null);
+		
+		// both start with the date, which may have ticked over in between
+		String stored = out.toString("ISO-8859-1");
+		String expectedStored = expected.toString("ISO-8859-1");
+		assertEquals(expectedStored.substring(expectedStored.indexOf('\n')), stored.substring(stored.indexOf('\n')));
+		assertTrue(stored.indexOf("key9=value 9") < stored.indexOf("key10=value 10"));
+	}
+	
+	@Test
+	public void testTypedGetters() throws IOException {
+		
+		OrderedProperties prop = new OrderedProperties();
+		prop.load(new StringReader("int = 42\nlong=-9000000000\nflag= TRUE \nlist=a, b,,c ,\n"
+				+ "iso=PT1M30S\nms=250\nsec=15s\nmin=2m\nmicro=7us\nday=1d\nbad=abc\n"));
+		
+		assertEquals(42, prop.getInt("int", 0));
+		assertEquals(7, prop.getInt("missing", 7));
+		assertEquals(-9000000000L, prop.getLong("long", 0));
+		assertTrue(prop.getBoolean("flag", false));
+		assertTrue(prop.getBoolean("missing", true));
+		assertEquals(Arrays.asList("a", "b", "c"), prop.getList("list"));
+		assertTrue(prop.getList("missing").isEmpty());
+		
+		assertEquals(Duration.ofSeconds(90), prop.getDuration("iso", null));
+		assertEquals(Duration.ofMillis(250), prop.getDuration("ms", null));
+		assertEquals(Duration.ofSeconds(15), prop.getDuration("sec", null));
+		assertEquals(Duration.ofMinutes(2), prop.getDuration("min", null));
+		assertEquals(Duration.ofNanos(7000), prop.getDuration("micro", null));
+		assertEquals(Duration.ofDays(1), prop.getDuration("day", null));
+		assertNull(prop.getDuration("missing", null));
+		
+		try {
+			prop.getInt("bad", 0);
+			fail();
+		} catch (NumberFormatException e) {
+			// expected
+		}
+		try {
+			prop.getBoolean("bad", false);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			prop.getDuration("bad", null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		
+		// a value parses as several types
+		assertEquals(Duration.ofMillis(42), prop.getDuration("int", null));
+		assertEquals(42, prop.getInt("int", 0));
+	}
+	
+	@Test
+	public void testTypedGettersMemoize() {
+		
+		OrderedProperties prop = new OrderedProperties();
+		prop.setProperty("list", "a,b");
+		
+		List<String> list = prop.getList("list");
+		assertTrue(list == prop.getList("list"));
+		
+		prop.setProperty("list", "c");
+		assertEquals(Arrays.asList("c"), prop.getList("list"));
+		
+		prop.remove("list");
+		assertTrue(prop.getList("list").isEmpty());
+		
+		prop.setProperty("list", "d");
+		assertEquals(Arrays.asList("d"), prop.getList("list"));
+		
+		ConcurrentOrderedProperties concurrent = new ConcurrentOrderedProperties();
+		concurrent.setProperty("list", "a,b");
+		list = concurrent.getList("list");
+		assertTrue(list == concurrent.getList("list"));
+		
+		concurrent.setProperty("other", "x");
+		assertEquals(list, concurrent.getList("list"));
+		concurrent.setProperty("list", "e");
+		assertEquals(Arrays.asList("e"), concurrent.getList("list"));
+	}
+	
+	@Test
+	public void testTypedGettersDefaults() {
+		
+		final Properties fallback = new Properties();
+		fallback.setProperty("port", "8080");
+		
+		OrderedProperties prop = new OrderedProperties() {
+			
+			private static final long serialVersionUID = 1L;
+			
+			{
+				defaults = fallback;
+			}
+		};
+		
+		assertEquals(8080, prop.getInt("port", 0));
+		prop.setProperty("port", "9090");
+		assertEquals(9090, prop.getInt("port", 0));
+	}
+	
+	@Test
+	public void testSubset() {
+		
+		OrderedProperties prop = new OrderedProperties();
+		prop.setProperty("db.primary.url", "jdbc:one");
+		prop.setProperty("db.replica.url", "jdbc:two");
+		prop.setProperty("db.primary.pool.size", "10");
+		prop.setProperty("cache.size", "100");
+		prop.setProperty("db.primary.user", "admin");
+		
+		OrderedProperties primary = prop.subset("db.primary.");
+		assertEquals(Arrays.asList("url", "pool.size", "user"), Collections.list(primary.propertyNames()));
+		assertEquals("jdbc:one", primary.getProperty("url"));
+		assertEquals(10, primary.getInt("pool.size", 0));
+		
+		// the subset is a copy, and the index follows later changes
+		primary.setProperty("url", "jdbc:three");
+		assertEquals("jdbc:one", prop.getProperty("db.primary.url"));
+		prop.remove("db.primary.url");
+		prop.setProperty("db.primary.timeout", "5s");
+		assertEquals(Arrays.asList("pool.size", "user", "timeout"), Collections.list(prop.subset("db.primary.").propertyNames()));
+		
+		assertEquals(5, prop.subset("").size());
+		assertTrue(prop.subset("none.").isEmpty());
+		
+		prop.clear();
+		assertTrue(prop.subset("db.").isEmpty());
+	}
+	
+	@Test
+	public void testSubsetView() {
+		
+		OrderedProperties prop = new OrderedProperties();
+		prop.setProperty("db.url", "jdbc:one");
+		prop.setProperty("app.name", "test");
+		
+		Map<String, String> db = prop.subsetView("db.");
+		assertEquals(Collections.singletonMap("url", "jdbc:one"), db);
+		
+		prop.setProperty("db.user", "admin");
+		prop.setProperty("db.url", "jdbc:two");
+		assertEquals("jdbc:two", db.get("url"));
+		assertEquals(Arrays.asList("url", "user"), new ArrayList<String>(db.keySet()));
+		assertFalse(db.containsKey("name"));
+		
+		// hidden from the entries too, not only from get()
+		prop.put("db.port", 5432);
+		assertFalse(db.containsKey("port"));
+		assertEquals(Arrays.asList("url", "user"), new ArrayList<String>(db.keySet()));
+		assertEquals(2, db.size());
+		prop.remove("db.port");
+		
+		try {
+			db.entrySet().iterator().next().setValue("x");
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		
+		ConcurrentOrderedProperties concurrent = new ConcurrentOrderedProperties();
+		concurrent.putAll(prop);
+		concurrent.setProperty("db.pool", "4");
+		assertEquals(Arrays.asList("url", "user", "pool"), Collections.list(concurrent.subset("db.").propertyNames()));
+		assertEquals(3, concurrent.subsetView("db.").size());
+	}
+	
+	@Test
+	public void testResolvedProperty() {
+		
+		OrderedProperties prop = new OrderedProperties();
+		prop.setProperty("host", "localhost");
+		prop.setProperty("port", "5432");
+		prop.setProperty("address", "${host}:${port}");
+		prop.setProperty("url", "jdbc://${address}/${db}");
+		prop.setProperty("plain", "no placeholders, ${unclosed");
+		
+		assertEquals("jdbc://localhost:5432/${db}", prop.getResolvedProperty("url"));
+		assertEquals("no placeholders, ${unclosed", prop.getResolvedProperty("plain"));
+		assertEquals("${host}:${port}", prop.getProperty("address"));
+		assertNull(prop.getResolvedProperty("missing"));
+		assertEquals("x", prop.getResolvedProperty("missing", "x"));
+		
+		// results built from a changed property are resolved again
+		prop.setProperty("port", "6543");
+		assertEquals("jdbc://localhost:6543/${db}", prop.getResolvedProperty("url"));
+		prop.setProperty("db", "main");
+		assertEquals("jdbc://localhost:6543/main", prop.getResolvedProperty("url"));
+		prop.remove("host");
+		assertEquals("${host}:6543", prop.getResolvedProperty("address"));
+		
+		prop.clear();
+		prop.setProperty("url", "${host}");
+		assertEquals("${host}", prop.getResolvedProperty("url"));
+	}
+	
+	@Test
+	public void testResolvedPropertyKeepsUnrelatedResults() {
+		
+		OrderedProperties prop = new OrderedProperties();
+		prop.setProperty("a", "1");
+		prop.setProperty("b", "${a}");
+		prop.setProperty("c", "2");
+		prop.setProperty("d", "${c}");
+		
+		String b = prop.getResolvedProperty("b");
+		String d = prop.getResolvedProperty("d");
+		
+		prop.setProperty("c", "3");
+		assertTrue(b == prop.getResolvedProperty("b"));
+		assertEquals("3", prop.getResolvedProperty("d"));
+		assertFalse(d.equals(prop.getResolvedProperty("d")));
+	}
+	
+	@Test
+	public void testResolvedPropertyCycle() {
+		
+		OrderedProperties prop = new OrderedProperties();
+		prop.setProperty("start", "${a}");
+		prop.setProperty("a", "${b}");
+		prop.setProperty("b", "x${a}");
+		
+		try {
+			prop.getResolvedProperty("start");
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("Circular placeholder reference: a -> b -> a", e.getMessage());
+		}
+		
+		// a failed resolution leaves nothing behind
+		prop.setProperty("b", "end");
+		assertEquals("end", prop.getResolvedProperty("start"));
+	}
+	
+	@Test
+	public void testResolvedPropertyChain() {
+		
+		OrderedProperties prop = new OrderedProperties();
+		prop.setProperty("key0", "0");
+		for (int i = 1; i < 1000; i++) {
+			prop.setProperty("key" + i, "${key" + (i - 1) + "}");
+		}
+		
+		assertEquals("0", prop.getResolvedProperty("key999"));
+		prop.setProperty("key0", "zero");
+		assertEquals("zero", prop.getResolvedProperty("key999"));
+	}
+	
+	@Test
+	public void testResolvedPropertyDefaultsAndConcurrent() {
+		
+		final OrderedProperties fallback = new OrderedProperties();
+		fallback.setProperty("host", "example.com");
+		fallback.setProperty("home", "http://${host}/");
+		
+		OrderedProperties prop = new ConcurrentOrderedProperties() {
+			
+			private static final long serialVersionUID = 1L;
+			
+			{
+				defaults = fallback;
+			}
+		};
+		prop.setProperty("api", "${home}api");
+		
+		assertEquals("http://example.com/api", prop.getResolvedProperty("api"));
+		assertEquals("http://example.com/", prop.getResolvedProperty("home"));
+		
+		// default values are resolved here, so a local host wins
+		prop.setProperty("host", "local");
+		assertEquals("http://local/api", prop.getResolvedProperty("api"));
+		assertEquals("http://local/", prop.getResolvedProperty("home"));
+		assertEquals("http://example.com/", fallback.getResolvedProperty("home"));
+		
+		prop.setProperty("home", "https://${host}/");
+		assertEquals("https://local/api", prop.getResolvedProperty("api"));
+	}
+	
+	private List<String> sortedLines(String stored) {
+		
+		// skip the date line, the rest is compared regardless of order
+		List<String> lines = new ArrayList<String>();
+		for (String line : stored.split(System.lineSeparator())) {
+			if (!line.matches("#\\w{3} \\w{3} .*")) {
+				lines.add(line);
+			}
+		}
+		Collections.sort(lines);
+		
+		return lines;
+	}
+	
+	private File makeFile(byte[] content) throws IOException {
+		
+		File file = File.createTempFile("ordered", ".properties");
+		file.deleteOnExit();
+		
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+		
+		return file;
+	}
+	
 	private InputStream makeStream(String prop) {
 		
 		return new ByteArrayInputStream(prop.getBytes());
@@ -0,0 +1,231 @@
+/*
+ * #%L
+ * Java Utils
+ * %%
+ * Copyright (C) 2013 Alvin Lin
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.nappingcoder.jutil.properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class PropertiesReloaderTest {
+	
+	/** modification time the reloaders see, moved on by each write */
+	private final AtomicLong _lastModified = new AtomicLong();
+	
+	@Test
+	public void testReloadOnlyWhenChanged() throws Exception {
+		
+		File file = makeFile("prop1=hello\nprop2=world\nprop3=again");
+		ConcurrentOrderedProperties prop = new ConcurrentOrderedProperties();
+		PropertiesReloader reloader = reloader(file, prop);
+		
+		PropertiesReloader.Changes changes = reloader.reload();
+		assertEquals(Arrays.asList("prop1", "prop2", "prop3"), new ArrayList<String>(changes.getAdded().keySet()));
+		assertEquals("world", prop.getProperty("prop2"));
+		
+		assertTrue(reloader.reload().isEmpty());
+		
+		write(file, "prop3=again\nprop2=there\nprop4=new");
+		changes = reloader.reload();
+		
+		assertEquals(Arrays.asList("prop4"), new ArrayList<String>(changes.getAdded().keySet()));
+		assertEquals("there", changes.getChanged().get("prop2"));
+		assertEquals(1, changes.getChanged().size());
+		assertEquals("hello", changes.getRemoved().get("prop1"));
+		assertEquals(1, changes.getRemoved().size());
+		
+		assertEquals(Arrays.asList("prop3", "prop2", "prop4"), new ArrayList<String>(prop.stringPropertyNames()));
+		assertEquals("there", prop.getProperty("prop2"));
+	}
+	
+	@Test
+	public void testListeners() throws Exception {
+		
+		File file = makeFile("prop1=hello");
+		OrderedProperties prop = new OrderedProperties();
+		PropertiesReloader reloader = reloader(file, prop);
+		
+		final List<PropertiesReloader.Changes> received = new ArrayList<PropertiesReloader.Changes>();
+		reloader.addListener(new PropertiesReloader.Listener() {
+			
+			public void propertiesChanged(PropertiesReloader.Changes changes) {
+				
+				throw new IllegalStateException("broken listener");
+			}
+		});
+		reloader.addListener(new PropertiesReloader.Listener() {
+			
+			public void propertiesChanged(PropertiesReloader.Changes changes) {
+				
+				received.add(changes);
+			}
+		});
+		
+		try {
+			reloader.reload();
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("broken listener", e.getMessage());
+		}
+		
+		// the other listener is called and the properties are in place anyway
+		assertEquals(1, received.size());
+		assertEquals("hello", received.get(0).getAdded().get("prop1"));
+		assertEquals("hello", prop.getProperty("prop1"));
+		
+		// same content, new time: parsed again, but nothing to tell
+		write(file, "prop1=hello");
+		assertTrue(reloader.reload().isEmpty());
+		assertEquals(1, received.size());
+	}
+	
+	@Test
+	public void testFailedReloadKeepsProperties() throws Exception {
+		
+		File file = makeFile("prop1=hello");
+		OrderedProperties prop = new OrderedProperties();
+		PropertiesReloader reloader = reloader(file, prop);
+		reloader.reload();
+		
+		write(file, "prop1=\\u00g1");
+		try {
+			reloader.reload();
+			fail();
+		} catch (IllegalArgumentException e) {
+			// malformed escape
+		}
+		
+		assertEquals("hello", prop.getProperty("prop1"));
+	}
+	
+	@Test
+	public void testReloadTopLayer() throws Exception {
+		
+		File file = makeFile("host=example.com\ntimeout=30");
+		LayeredProperties prop = new LayeredProperties("defaults", "file");
+		prop.setProperty("defaults", "timeout", "30");
+		prop.setProperty("defaults", "retries", "3");
+		PropertiesReloader reloader = reloader(file, prop);
+		
+		// timeout is in the file, but already shows the same value
+		PropertiesReloader.Changes changes = reloader.reload();
+		assertEquals(Arrays.asList("host"), new ArrayList<String>(changes.getAdded().keySet()));
+		assertTrue(changes.getChanged().isEmpty());
+		assertTrue(changes.getRemoved().isEmpty());
+		assertEquals("30", prop.getLayer("file").getProperty("timeout"));
+		
+		write(file, "host=example.com");
+		changes = reloader.reload();
+		
+		// the default shows through again, nothing the reader sees changed
+		assertTrue(changes.isEmpty());
+		assertEquals("30", prop.getProperty("timeout"));
+		assertEquals("3", prop.getProperty("retries"));
+		assertNull(prop.getLayer("file").getProperty("timeout"));
+		
+		write(file, "host=example.org\nretries=5");
+		changes = reloader.reload();
+		
+		assertEquals("example.org", changes.getChanged().get("host"));
+		assertEquals("5", changes.getChanged().get("retries"));
+		assertEquals(2, changes.getChanged().size());
+		assertTrue(changes.getAdded().isEmpty());
+		assertTrue(changes.getRemoved().isEmpty());
+		assertEquals("30", prop.getProperty("timeout"));
+	}
+	
+	@Test
+	public void testPolling() throws Exception {
+		
+		File file = makeFile("prop1=hello");
+		ConcurrentOrderedProperties prop = new ConcurrentOrderedProperties();
+		
+		final BlockingQueue<PropertiesReloader.Changes> received = new LinkedBlockingQueue<PropertiesReloader.Changes>();
+		ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+		PropertiesReloader reloader = reloader(file, prop);
+		reloader.addListener(new PropertiesReloader.Listener() {
+			
+			public void propertiesChanged(PropertiesReloader.Changes changes) {
+				
+				received.add(changes);
+			}
+		});
+		
+		try {
+			assertSame(reloader, reloader.start(executor, 10, TimeUnit.MILLISECONDS));
+			
+			assertNotNull(received.poll(10, TimeUnit.SECONDS));
+			assertEquals("hello", prop.getProperty("prop1"));
+			
+			write(file, "prop1=hello again");
+			
+			PropertiesReloader.Changes changes = received.poll(10, TimeUnit.SECONDS);
+			assertEquals("hello again", changes.getChanged().get("prop1"));
+			assertEquals("hello again", prop.getProperty("prop1"));
+		} finally {
+			reloader.close();
+			executor.shutdownNow();
+		}
+	}
+	
+	private PropertiesReloader reloader(File file, OrderedProperties target) {
+		
+		return new PropertiesReloader(file, StandardCharsets.ISO_8859_1, target, _lastModified::get);
+	}
+	
+	private File makeFile(String content) throws IOException {
+		
+		File file = File.createTempFile("reloaded", ".properties");
+		file.deleteOnExit();
+		write(file, content);
+		
+		return file;
+	}
+	
+	private void write(File file, String content) throws IOException {
+		
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content.getBytes("ISO-8859-1"));
+		} finally {
+			out.close();
+		}
+		
+		_lastModified.incrementAndGet();
+	}
+}